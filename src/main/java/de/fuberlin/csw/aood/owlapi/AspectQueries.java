@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi;
+
+import java.lang.annotation.Annotation;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLogicalAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+import de.fuberlin.csw.aood.owlapi.helpers.ContainmentHelper;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+
+/**
+ * Stream-based queries for axioms associated with aspects, 
+ * as an alternative to the Set-returning OWL API calls within methods marked with 
+ * {@link OWLAspectAnd} or {@link OWLAspectOr}.
+ * 
+ * <p>Streams of axioms are evaluated lazily on the axiom key indexes (see {@link AxiomKeyIndex}) of the ontology and its imports, 
+ * so pipelines can stop early (e.g. using limit() or findFirst()) without copying axiom sets. 
+ * If configured (snapshotReads), they read the versions of the indexes pinned when the stream is created, 
+ * otherwise they see concurrent changes weakly consistently. 
+ * Streams of referencing axioms filter the axioms referencing the entity, which the OWL API copies. 
+ * Like the filtered OWL API calls, streams contain axioms without annotations, each axiom once. 
+ * Modules are not expanded (see Config option expandModules), 
+ * only axioms associated with the current aspects are returned.
+ * 
+ * <p>Batches of axioms can be checked for containment at once (see containsAll() and containsAny()).
+ * 
+ * <p>Several queries can read one consistent version of an ontology, which is not affected 
+ * by concurrent changes, using snapshot().
+ * 
+ * <p>Usage: AspectQueries.axioms(onto, AxiomType.SUBCLASS_OF, Imports.INCLUDED, AspectQueries.predicate(onto, "iri1", "iri2")).limit(10)
+ */
+public class AspectQueries {
+	
+	/**
+	 * gets the predicate for the aspects specified in this annotation
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @return compiled aspect predicate
+	 */
+	public static AspectPredicate predicate(OWLOntology onto, Annotation annotation) {
+		return BasicHelper.getPredicate(onto, annotation);
+	}
+	
+	/**
+	 * gets the predicate for a conjunction of aspects
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param aspects
+	 * 			aspect IRIs as Strings, all of which an axiom must have
+	 * @return compiled aspect predicate
+	 */
+	public static AspectPredicate predicate(OWLOntology onto, String... aspects) {
+		return AspectPredicate.of(new String[][] { aspects }, onto.getOWLOntologyManager().getOWLDataFactory());
+	}
+	
+	/**
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return axioms associated with current aspects (without annotations)
+	 */
+	public static Stream<OWLAxiom> axioms(OWLOntology onto, Imports imports, AspectPredicate predicate) {
+		return concat(onto, imports, snapshot -> snapshot.streamAxioms(predicate));
+	}
+	
+	/**
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param axiomType
+	 * 			type of axioms
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return axioms of this type associated with current aspects (without annotations)
+	 */
+	public static <T extends OWLAxiom> Stream<T> axioms(OWLOntology onto, AxiomType<T> axiomType, 
+			Imports imports, AspectPredicate predicate) {
+		return concat(onto, imports, snapshot -> snapshot.streamAxioms(axiomType, predicate));
+	}
+	
+	/**
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return logical axioms associated with current aspects (without annotations)
+	 */
+	public static Stream<OWLLogicalAxiom> logicalAxioms(OWLOntology onto, Imports imports, AspectPredicate predicate) {
+		return concat(onto, imports, snapshot -> snapshot.streamLogicalAxioms(predicate));
+	}
+	
+	/**
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param entity
+	 * 			entity which is referenced
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return axioms referencing this entity associated with current aspects (without annotations), 
+	 * 			filtered from the axioms referencing the entity copied by the OWL API
+	 */
+	public static Stream<OWLAxiom> referencingAxioms(OWLOntology onto, OWLEntity entity, 
+			Imports imports, AspectPredicate predicate) {
+		return filter(onto, onto.getReferencingAxioms(entity, imports), predicate);
+	}
+	
+	/**
+	 * checks for each of these axioms whether the ontology contains it associated with current aspects 
+	 * (like containsAxiom(axiom, imports, axiomAnnotations) within methods marked with aspects)
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param axioms
+	 * 			axioms to be checked
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param axiomAnnotations
+	 * 			whether annotations of the axioms (other than aspects) are considered
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return bitset having the bit at the position of every contained axiom set
+	 */
+	public static BitSet containsAll(OWLOntology onto, List<? extends OWLAxiom> axioms, 
+			Imports imports, AxiomAnnotations axiomAnnotations, AspectPredicate predicate) {
+		return ContainmentHelper.containsAxioms(axioms, imports, axiomAnnotations, onto, predicate);
+	}
+	
+	/**
+	 * checks whether the ontology contains any of these axioms associated with current aspects 
+	 * (like containsAxiom(axiom, imports, axiomAnnotations) within methods marked with aspects)
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param axioms
+	 * 			axioms to be checked
+	 * @param imports
+	 * 			whether axioms of the imports closure are included
+	 * @param axiomAnnotations
+	 * 			whether annotations of the axioms (other than aspects) are considered
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @return true, if at least one of the axioms is contained
+	 */
+	public static boolean containsAny(OWLOntology onto, Iterable<? extends OWLAxiom> axioms, 
+			Imports imports, AxiomAnnotations axiomAnnotations, AspectPredicate predicate) {
+		return ContainmentHelper.containsAnyAxiom(axioms, imports, axiomAnnotations, onto, predicate);
+	}
+	
+	/**
+	 * pins the current version of the axioms of this ontology (without its imports)
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @return snapshot which can be queried with predicates of this class while the ontology is changed
+	 */
+	public static AxiomKeyIndex.Snapshot snapshot(OWLOntology onto) {
+		return AxiomKeyIndex.snapshot(onto);
+	}
+	
+	/**
+	 * concatenates the streams of the current versions of the indexes of the ontologies (in the imports closure), 
+	 * so no axiom set is copied and an axiom contained in several ontologies is returned once
+	 */
+	private static <T> Stream<T> concat(OWLOntology onto, Imports imports, 
+			Function<AxiomKeyIndex.Snapshot, Stream<T>> axioms) {
+		Set<OWLOntology> ontologies = (imports == Imports.INCLUDED) ? onto.getImportsClosure() : Collections.singleton(onto);
+		Stream<T> stream = Stream.empty();
+		for (OWLOntology o : ontologies) {
+			// concatenated streams are read element by element, so pipelines stop early
+			stream = Stream.concat(stream, axioms.apply(AxiomKeyIndex.get(o).current()));
+		}
+		return (ontologies.size() > 1) ? stream.distinct() : stream;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T extends OWLAxiom> Stream<T> filter(OWLOntology onto, Collection<T> axioms, AspectPredicate predicate) {
+		AspectIndex index = AspectIndex.get(onto);
+		return axioms.stream()
+				.filter(ax -> index.matches(ax, predicate))
+				// axiom types return their own type without annotations
+				.map(ax -> (T) ax.getAxiomWithoutAnnotations())
+				.distinct();
+	}
+
+}
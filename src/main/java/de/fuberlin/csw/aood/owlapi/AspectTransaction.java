@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+
+import de.fuberlin.csw.aood.owlapi.helpers.ModificationHelper;
+
+/**
+ * Axiom changes of an ontology done under current aspects, which are applied together or not at all.
+ * 
+ * <p>Additions, removals and re-tags are only collected until commit() is called. 
+ * Each removal is checked first: the ontology, including the preceding changes, must contain the axiom 
+ * with the aspects it is removed from, otherwise the ontology is left unchanged. 
+ * The resulting changes are applied as one batch and recorded in an undo log, 
+ * so rollback() can also revert a committed transaction without keeping a copy of the ontology. 
+ * This is only possible as long as no later writer has added or removed an axiom the transaction changed: 
+ * rollback() checks this first and otherwise fails, leaving the ontology and the committed transaction as they are.
+ * 
+ * <p>Usage: AspectTransaction tx = new AspectTransaction(onto, annotation); tx.add(ax1); tx.retag(ax2, otherAnnotation); tx.commit();
+ */
+public class AspectTransaction {
+	
+	private final OWLOntology onto;
+	private final Annotation annotation;
+	/** collected changes, not applied yet */
+	private final List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+	/** annotations specifying the aspects of each collected change */
+	private final List<Annotation> annotations = new ArrayList<Annotation>();
+	/** changes applied to the ontology by commit(), in order */
+	private final List<OWLOntologyChange> undoLog = new ArrayList<OWLOntologyChange>();
+	private boolean committed;
+	
+	/**
+	 * @param onto
+	 * 			ontology to be changed
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 */
+	public AspectTransaction(OWLOntology onto, Annotation annotation) {
+		this.onto = onto;
+		this.annotation = annotation;
+	}
+	
+	/**
+	 * adds this axiom with current aspects (an existing axiom gets current aspects)
+	 * 
+	 * @param axiom
+	 * 			axiom to be added
+	 */
+	public void add(OWLAxiom axiom) {
+		collect(new AddAxiom(onto, axiom), annotation);
+	}
+	
+	/**
+	 * removes current aspects from this axiom
+	 * 
+	 * @param axiom
+	 * 			axiom to be removed, must be associated with current aspects
+	 */
+	public void remove(OWLAxiom axiom) {
+		collect(new RemoveAxiom(onto, axiom), annotation);
+	}
+	
+	/**
+	 * moves this axiom from other aspects to current aspects
+	 * 
+	 * @param axiom
+	 * 			axiom to be re-tagged, must be associated with the other aspects
+	 * @param fromAnnotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying the aspects to be removed
+	 */
+	public void retag(OWLAxiom axiom, Annotation fromAnnotation) {
+		collect(new RemoveAxiom(onto, axiom), fromAnnotation);
+		collect(new AddAxiom(onto, axiom), annotation);
+	}
+	
+	/**
+	 * checks and applies all collected changes
+	 * 
+	 * @return list of changes applied successfully (considering successful updating of aspect annotations)
+	 * @throws IllegalStateException
+	 * 			if an axiom to be removed is not associated with the aspects it is removed from 
+	 * 			(the ontology is unchanged then, unless reverting the changes applied so far failed, 
+	 * 			which is attached as suppressed exception), or if the transaction has already been committed
+	 */
+	public List<OWLOntologyChange> commit() {
+		checkNotCommitted();
+		List<OWLOntologyChange> changesApplied = ModificationHelper.handleTransaction(changes, annotations, undoLog);
+		committed = true;
+		changes.clear();
+		annotations.clear();
+		return changesApplied;
+	}
+	
+	/**
+	 * discards the collected changes, or reverts them if the transaction has already been committed. 
+	 * Afterwards the transaction can be used again.
+	 * 
+	 * @throws IllegalStateException
+	 * 			if the transaction has been committed and an axiom it changed has been added or removed again since 
+	 * 			(nothing is reverted then, and the transaction stays committed)
+	 */
+	public void rollback() {
+		if (committed) {
+			ModificationHelper.revertChanges(undoLog);
+			undoLog.clear();
+			committed = false;
+		}
+		changes.clear();
+		annotations.clear();
+	}
+	
+	/**
+	 * @return whether commit() has been called successfully (and the transaction has not been rolled back)
+	 */
+	public boolean isCommitted() {
+		return committed;
+	}
+	
+	private void collect(OWLOntologyChange change, Annotation changeAnnotation) {
+		checkNotCommitted();
+		changes.add(change);
+		annotations.add(changeAnnotation);
+	}
+	
+	private void checkNotCommitted() {
+		if (committed) {
+			throw new IllegalStateException("Transaction has already been committed");
+		}
+	}
+
+}
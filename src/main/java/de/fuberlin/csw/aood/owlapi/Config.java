@@ -21,6 +21,34 @@ public class Config extends Properties {
 	private Config() {
 		// TODO do not hardwire this
 		put("expandModules", true);
+		// axioms annotated via sub-properties of isPointcutOf have the same aspects
+		put("matchAspectSubProperties", true);
+		// filtered axiom sets are returned as lazy read-only views (only used if modules are not expanded)
+		put("lazyAxiomViews", false);
+		// collections with at least this many elements are filtered in parallel (0 disables parallel filtering)
+		put("parallelFilteringThreshold", 0);
+		// parallelism of the pool used for parallel filtering and parallel changes (0 uses the common fork/join pool)
+		put("parallelFilteringPoolSize", 0);
+		// change lists with at least this many changes are applied per ontology in parallel (0 disables parallel changes)
+		put("parallelChangeThreshold", 0);
+		// maximum number of expanded modules kept in the module cache (0 disables caching)
+		put("moduleCacheSize", 64);
+		// module extractors are built once per ontology revision instead of once per extraction
+		put("precomputeModuleExtractors", false);
+		// cached modules are updated on ontology changes instead of being extracted again
+		put("maintainModulesIncrementally", false);
+		// counts of axioms with aspects are maintained per axiom type (only used if modules are not expanded)
+		put("maintainAxiomCounts", true);
+		// anonymous individuals are filtered by an index of the aspects of their referencing axioms instead of a scan of all axioms
+		put("indexAnonymousIndividuals", true);
+		// entities are filtered by an index of the aspects of their declarations instead of a search for their referencing axioms
+		put("indexDeclarations", true);
+		// property values of individuals are looked up in an index of the property assertions instead of filtering their assertion axioms
+		put("indexPropertyAssertions", true);
+		// number of locks guarding aspect-aware writes of axioms against concurrent callers (see AxiomLocks)
+		put("writeLockStripes", 64);
+		// the axiom key index is published in immutable versions, so getAxioms() and getLogicalAxioms() read a snapshot unaffected by concurrent writes (only used if modules are not expanded)
+		put("snapshotReads", false);
 	}
 	
 }
@@ -382,9 +382,15 @@ public class AxiomExtractionAspect {
 	 * 			in case something goes wrong
 	 */
 	private Object handleAxioms(ProceedingJoinPoint pjp, OWLOntology ontology, Annotation annotation) throws Throwable {
+		Set<? extends OWLAxiom> snapshotAxioms = HelperFacade.filterAxiomsFromSnapshot(
+				ontology, pjp.getSignature().getName(), pjp.getArgs(), annotation);
+		if (snapshotAxioms != null) {
+			return snapshotAxioms;
+		}
 		@SuppressWarnings("unchecked")
 		Collection<OWLAxiom> axColl = (Collection<OWLAxiom>) pjp.proceed();
-		Set<OWLAxiom> axSet = CollectionFactory.createSet(axColl);
+		// the OWL API already returns copies, so sets are filtered directly
+		Set<OWLAxiom> axSet = (axColl instanceof Set) ? (Set<OWLAxiom>) axColl : CollectionFactory.createSet(axColl);
 		return HelperFacade.filterAxioms(ontology, axSet, annotation);
 	}
 
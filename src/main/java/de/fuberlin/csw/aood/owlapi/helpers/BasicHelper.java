@@ -18,8 +18,10 @@
 package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotation;
@@ -28,8 +30,12 @@ import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
 
 /**
  * This class is parent of all helper classes 
@@ -46,6 +52,14 @@ public abstract class BasicHelper {
 	public static final IRI ASPECT_BASE_CLASS_IRI = IRI.create(
 			"http://www.corporate-semantic-web.de/ontologies/aspect/owl#Aspect");
 	
+	/** pool used for parallel filtering and parallel changes */
+	protected static final ForkJoinPool pool;
+	
+	static {
+		int poolSize = (int)Config.instance().get("parallelFilteringPoolSize");
+		pool = (poolSize > 0) ? new ForkJoinPool(poolSize) : ForkJoinPool.commonPool();
+	}
+	
 	// Basic helper methods needed by many subclasses (FilteringHelper, ModificationHelper...)
 
 	/**
@@ -97,9 +111,23 @@ public abstract class BasicHelper {
 	    }
 	}
 	
+	/**
+	 * gets the compiled (and cached) predicate for the aspects specified in this annotation
+	 * 
+	 * @param onto
+	 * 			ontology whose data factory is used for aspect annotations
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @return compiled aspect predicate
+	 */
+	public static AspectPredicate getPredicate(OWLOntology onto, Annotation annotation) {
+		return AspectPredicate.of(annotation, onto.getOWLOntologyManager().getOWLDataFactory());
+	}
+	
 	/**
 	 * checks whether this annotation is an aspect annotation 
-	 * (using a data factory associated with a specific ontology)
+	 * (using a data factory associated with a specific ontology). 
+	 * Sub-properties of isPointcutOf are not known without the ontology, see {@link AspectIndex#isAspectAnnotation}.
 	 * 
 	 * @param anno
 	 * 			annotation to be checked
@@ -109,9 +137,7 @@ public abstract class BasicHelper {
 	 * 			true if this annotation is an aspect annotation, false otherwise
 	 */
 	public static boolean isAspectAnnotation (OWLAnnotation anno, OWLDataFactory df) {
-		OWLAnnotationProperty aspectProp = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
-		OWLAnnotationProperty annoProp = anno.getProperty();
-		return annoProp.equals(aspectProp);
+		return AspectIndex.isAspectAnnotation(anno, Collections.singleton(getAspectProperty(df)));
 	}
 	
 	/**
@@ -141,17 +167,8 @@ public abstract class BasicHelper {
 	 * 			set of similar axioms
 	 */
 	public static Set<OWLAxiom> getSimilarAxioms(OWLAxiom passedAxiom, OWLOntology onto) {
-		Set<OWLAxiom> result = new HashSet<OWLAxiom>();
-		OWLDataFactory df = onto.getOWLOntologyManager().getOWLDataFactory();
-		Set<OWLAxiom> similarAxioms = onto.getAxiomsIgnoreAnnotations(passedAxiom);
-		for (OWLAxiom similarAxiom : similarAxioms) {
-			Set<OWLAnnotation> regularAnnotationsOnSimilarAxiom = findRegularAnnotations(df, similarAxiom.getAnnotations());
-			Set<OWLAnnotation> regularAnnotationsOnPassedAxiom = findRegularAnnotations(df, passedAxiom.getAnnotations());
-			if (regularAnnotationsOnSimilarAxiom.equals(regularAnnotationsOnPassedAxiom)) {
-				result.add(similarAxiom);
-			}
-		}
-		return result;
+		AxiomKeyIndex index = AxiomKeyIndex.get(onto);
+		return index.getSimilarAxioms(passedAxiom, index.getRegularAnnotations(passedAxiom));
 	}
 	
 	/**
@@ -176,6 +193,31 @@ public abstract class BasicHelper {
 		return regularAnnotations;
 	}
 	
+	/**
+	 * Gets only regular annotations from this set of annotations. 
+	 * Regular annotations are those which are not aspect annotations in this ontology 
+	 * (annotations with an IRI value using isPointcutOf or, if configured, one of its sub-properties, 
+	 * see {@link AspectIndex#isAspectAnnotation(OWLAnnotation)}).
+	 * 
+	 * @param onto
+	 * 			ontology defining the aspect annotation properties
+	 * @param axAnnotations
+	 * 			set of annotations to be filtered
+	 * @return
+	 * 			set of regular annotations
+	 */
+	public static Set<OWLAnnotation> findRegularAnnotations(OWLOntology onto,
+			Set<OWLAnnotation> axAnnotations) {
+		AspectIndex index = AspectIndex.get(onto);
+		Set<OWLAnnotation> regularAnnotations = new HashSet<OWLAnnotation>();
+		for (OWLAnnotation anno : axAnnotations) {
+			if (!index.isAspectAnnotation(anno)) {
+				regularAnnotations.add(anno);
+			}	
+		}
+		return regularAnnotations;
+	}
+	
 	/**
 	 * returns the set of elements which are contained only in set2, but not in set1
 	 * 
@@ -207,7 +249,8 @@ public abstract class BasicHelper {
 	 * 			false otherwise
 	 */
 	protected static boolean hasAllAspects(OWLAxiom ax, OWLOntology onto, String[] aspects) {
-		return ax.getAnnotations().containsAll(createSetOfRelevantAnnotations(onto, aspects));
+		AspectPredicate predicate = AspectPredicate.ofCached(new String[][] {aspects}, onto.getOWLOntologyManager().getOWLDataFactory());
+		return AspectIndex.get(onto).matches(ax, predicate);
 	}
 
 }
@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.parameters.ChangeApplied;
+
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AspectProperties;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+import de.fuberlin.csw.aood.owlapi.index.AxiomLocks;
+
+/**
+ * Axiom additions and removals done by the modification helpers.
+ * 
+ * <p>An immediate batch applies every change right away. 
+ * A deferred batch only records the changes and applies all of them with a single applyChanges() call, 
+ * so listeners and indexes are notified once. Until then, the recorded changes are taken into account 
+ * by the methods of the batch, so they give the same results as if the changes had been applied one by one. 
+ * Changes of the annotation property hierarchy change which annotations are aspects, which the batch cannot 
+ * take into account, so recorded changes are applied before and right after such a change (see isBarrier()).
+ * 
+ * <p>Callers hold the {@link AxiomLocks} of the axioms they change. Changes are applied holding the locks 
+ * of the changed ontologies, and whether an ontology contains an axiom is looked up in its {@link AxiomKeyIndex}, 
+ * so ontologies are never read while another writer changes them.
+ */
+final class ChangeBatch {
+	
+	/** whether changes are only recorded */
+	private final boolean deferred;
+	/** recorded changes, in order */
+	private final List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+	/** changes applied by the manager since the last call of apply(), when recorded changes had to be flushed */
+	private final List<OWLOntologyChange> flushed = new ArrayList<OWLOntologyChange>();
+	/** recorded net changes of ontologies */
+	private final Map<OWLOntology, Overlay> overlays = new IdentityHashMap<OWLOntology, Overlay>();
+	/** manager of the ontologies of the recorded changes */
+	private OWLOntologyManager manager;
+	
+	private ChangeBatch(boolean deferred) {
+		this.deferred = deferred;
+	}
+	
+	/**
+	 * @return batch applying every change right away
+	 */
+	static ChangeBatch immediate() {
+		return new ChangeBatch(false);
+	}
+	
+	/**
+	 * @return batch recording changes until apply() is called
+	 */
+	static ChangeBatch deferred() {
+		return new ChangeBatch(true);
+	}
+	
+	/**
+	 * checks whether the recorded changes have to be applied before this change can be handled, 
+	 * i.e. whether it is a change the batch cannot take into account, or a change of an ontology of another manager
+	 * 
+	 * @param change
+	 * 			change to be handled next
+	 * @return true, if apply() has to be called before handling this change
+	 */
+	boolean isBarrier(OWLOntologyChange change) {
+		if (changes.isEmpty()) {
+			return false;
+		}
+		// changes of the annotation property hierarchy change which annotations are aspects
+		return !change.isAxiomChange() || change.getAxiom().isOfType(AxiomType.SUB_ANNOTATION_PROPERTY_OF) 
+				|| change.getOntology().getOWLOntologyManager() != manager;
+	}
+	
+	/**
+	 * adds this axiom to this ontology
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param axiom
+	 * 			axiom to be added
+	 * @return SUCCESSFULLY, if the ontology did not contain this axiom yet
+	 */
+	ChangeApplied addAxiom(OWLOntology onto, OWLAxiom axiom) {
+		if (!deferred) {
+			return applyNow(Collections.<OWLOntologyChange>singletonList(new AddAxiom(onto, axiom)));
+		}
+		ChangeApplied chgApplied = recordAdd(onto, axiom);
+		flushIfBarrier(axiom);
+		return chgApplied;
+	}
+	
+	/**
+	 * removes this axiom from this ontology
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param axiom
+	 * 			axiom to be removed
+	 * @return SUCCESSFULLY, if the ontology contained this axiom
+	 */
+	ChangeApplied removeAxiom(OWLOntology onto, OWLAxiom axiom) {
+		if (!deferred) {
+			return applyNow(Collections.<OWLOntologyChange>singletonList(new RemoveAxiom(onto, axiom)));
+		}
+		ChangeApplied chgApplied = recordRemove(onto, axiom);
+		flushIfBarrier(axiom);
+		return chgApplied;
+	}
+	
+	/**
+	 * replaces this axiom of this ontology by another axiom, e.g. the same axiom with other aspects. 
+	 * Both changes are applied together, so listeners never see the ontology without either axiom, 
+	 * and nothing is changed if both axioms are equal.
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param oldAxiom
+	 * 			axiom to be removed
+	 * @param newAxiom
+	 * 			axiom to be added instead
+	 * @return SUCCESSFULLY, if the ontology did not contain the new axiom apart from the old one
+	 */
+	ChangeApplied replaceAxiom(OWLOntology onto, OWLAxiom oldAxiom, OWLAxiom newAxiom) {
+		if (oldAxiom.equals(newAxiom)) {
+			boolean contained = deferred ? getOverlay(onto).contains(oldAxiom) : AxiomKeyIndex.get(onto).containsAxiom(oldAxiom);
+			return contained ? ChangeApplied.SUCCESSFULLY : ChangeApplied.UNSUCCESSFULLY;
+		}
+		if (deferred) {
+			// recorded next to each other, so they are still applied as one replacement
+			recordRemove(onto, oldAxiom);
+			ChangeApplied chgApplied = recordAdd(onto, newAxiom);
+			flushIfBarrier(newAxiom);
+			return chgApplied;
+		}
+		if (AxiomKeyIndex.get(onto).containsAxiom(newAxiom)) {
+			applyNow(Collections.<OWLOntologyChange>singletonList(new RemoveAxiom(onto, oldAxiom)));
+			return ChangeApplied.UNSUCCESSFULLY;
+		}
+		applyNow(Arrays.<OWLOntologyChange>asList(new RemoveAxiom(onto, oldAxiom), new AddAxiom(onto, newAxiom)));
+		return ChangeApplied.SUCCESSFULLY;
+	}
+	
+	/**
+	 * finds axioms in this ontology which are similar to the given axiom (see {@link BasicHelper#getSimilarAxioms}), 
+	 * taking recorded changes into account
+	 * 
+	 * @param passedAxiom
+	 * 			axiom for which similar axioms have to be found
+	 * @param onto
+	 * 			ontology to be searched
+	 * @return
+	 * 			set of similar axioms
+	 */
+	Set<OWLAxiom> getSimilarAxioms(OWLAxiom passedAxiom, OWLOntology onto) {
+		Overlay overlay = overlays.get(onto);
+		if (overlay == null) {
+			return BasicHelper.getSimilarAxioms(passedAxiom, onto);
+		}
+		AxiomKeyIndex index = AxiomKeyIndex.get(onto);
+		Set<OWLAnnotation> regularAnnotations = index.getRegularAnnotations(passedAxiom);
+		Set<OWLAxiom> similarAxioms = index.getSimilarAxioms(passedAxiom, regularAnnotations);
+		similarAxioms.removeAll(overlay.removed);
+		for (OWLAxiom addedAxiom : overlay.getAdded(passedAxiom.getAxiomWithoutAnnotations())) {
+			if (index.getRegularAnnotations(addedAxiom).equals(regularAnnotations)) {
+				similarAxioms.add(addedAxiom);
+			}
+		}
+		return similarAxioms;
+	}
+	
+	/**
+	 * checks if this ontology contains an axiom similar to the given axiom (see {@link BasicHelper#getSimilarAxioms}) 
+	 * which satisfies this predicate, taking recorded changes into account
+	 * 
+	 * @param passedAxiom
+	 * 			axiom for which similar axioms have to be found
+	 * @param onto
+	 * 			ontology to be searched
+	 * @param predicate
+	 * 			compiled aspect predicate
+	 * @return true, if such an axiom exists, 
+	 * 			false otherwise
+	 */
+	boolean containsSimilar(OWLAxiom passedAxiom, OWLOntology onto, AspectPredicate predicate) {
+		if (!overlays.containsKey(onto)) {
+			AxiomKeyIndex index = AxiomKeyIndex.get(onto);
+			return index.containsSimilar(passedAxiom, index.getRegularAnnotations(passedAxiom), predicate);
+		}
+		AspectIndex index = AspectIndex.get(onto);
+		for (OWLAxiom similarAxiom : getSimilarAxioms(passedAxiom, onto)) {
+			if (index.matches(similarAxiom, predicate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * applies all recorded changes with a single call
+	 * 
+	 * @return changes applied by the manager, 
+	 * 			including changes applied before because recorded changes had to be flushed
+	 */
+	List<OWLOntologyChange> apply() {
+		List<OWLOntologyChange> applied = applyRecorded();
+		if (flushed.isEmpty()) {
+			return applied;
+		}
+		List<OWLOntologyChange> allApplied = new ArrayList<OWLOntologyChange>(flushed);
+		allApplied.addAll(applied);
+		flushed.clear();
+		return allApplied;
+	}
+	
+	/**
+	 * drops the recorded changes without applying them
+	 * 
+	 * @return changes applied by the manager since the last call of apply(), 
+	 * 			because recorded changes had to be flushed
+	 */
+	List<OWLOntologyChange> discard() {
+		List<OWLOntologyChange> applied = new ArrayList<OWLOntologyChange>(flushed);
+		flushed.clear();
+		changes.clear();
+		overlays.clear();
+		manager = null;
+		return applied;
+	}
+	
+	/**
+	 * applies the recorded changes with a single call
+	 * 
+	 * @return changes applied by the manager
+	 */
+	private List<OWLOntologyChange> applyRecorded() {
+		if (changes.isEmpty()) {
+			return Collections.emptyList();
+		}
+		try {
+			return applyLocked(new ArrayList<OWLOntologyChange>(changes));
+		} finally {
+			changes.clear();
+			overlays.clear();
+			manager = null;
+		}
+	}
+	
+	/**
+	 * applies these changes of an ontology right away
+	 * 
+	 * @return SUCCESSFULLY, if the manager applied any of the changes
+	 */
+	private static ChangeApplied applyNow(List<OWLOntologyChange> ontoChanges) {
+		List<OWLOntologyChange> applied = applyLocked(ontoChanges);
+		return applied.isEmpty() ? ChangeApplied.UNSUCCESSFULLY : ChangeApplied.SUCCESSFULLY;
+	}
+	
+	/**
+	 * applies these changes with a single applyChanges() call, holding the locks of the changed ontologies 
+	 * (see {@link AxiomLocks#lockChangedOntologies}). 
+	 * After a change of aspect properties, the published axiom key indexes are rebuilt before the locks are released, 
+	 * so readers of snapshots never have to rebuild them.
+	 * 
+	 * @param changes
+	 * 			changes of ontologies of one manager
+	 * @return changes applied by the manager
+	 */
+	static List<OWLOntologyChange> applyLocked(List<OWLOntologyChange> changes) {
+		OWLOntologyManager om = changes.get(0).getOntology().getOWLOntologyManager();
+		List<Lock> locks = AxiomLocks.lockChangedOntologies(changes);
+		try {
+			List<OWLOntologyChange> applied = om.applyChanges(changes);
+			for (OWLOntologyChange change : applied) {
+				if (AspectProperties.changesClosure(change)) {
+					AxiomKeyIndex.refresh(om);
+					break;
+				}
+			}
+			return applied;
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	private ChangeApplied recordAdd(OWLOntology onto, OWLAxiom axiom) {
+		if (!getOverlay(onto).add(axiom)) {
+			return ChangeApplied.UNSUCCESSFULLY;
+		}
+		record(new AddAxiom(onto, axiom));
+		return ChangeApplied.SUCCESSFULLY;
+	}
+	
+	private ChangeApplied recordRemove(OWLOntology onto, OWLAxiom axiom) {
+		if (!getOverlay(onto).remove(axiom)) {
+			return ChangeApplied.UNSUCCESSFULLY;
+		}
+		record(new RemoveAxiom(onto, axiom));
+		return ChangeApplied.SUCCESSFULLY;
+	}
+	
+	/**
+	 * applies the recorded changes if this axiom changes which annotations are aspects, 
+	 * so the following changes are handled with the new aspect properties
+	 */
+	private void flushIfBarrier(OWLAxiom axiom) {
+		if (axiom.isOfType(AxiomType.SUB_ANNOTATION_PROPERTY_OF) && !changes.isEmpty()) {
+			flushed.addAll(applyRecorded());
+		}
+	}
+	
+	private void record(OWLOntologyChange change) {
+		manager = change.getOntology().getOWLOntologyManager();
+		changes.add(change);
+	}
+	
+	private Overlay getOverlay(OWLOntology onto) {
+		Overlay overlay = overlays.get(onto);
+		if (overlay == null) {
+			overlay = new Overlay(onto);
+			overlays.put(onto, overlay);
+		}
+		return overlay;
+	}
+	
+	/**
+	 * net changes of an ontology recorded so far
+	 */
+	private static final class Overlay {
+		
+		private final AxiomKeyIndex index;
+		/** axioms added which the ontology does not contain */
+		private final Map<OWLAxiom, Set<OWLAxiom>> addedByBase = new HashMap<OWLAxiom, Set<OWLAxiom>>();
+		/** axioms removed which the ontology contains */
+		private final Set<OWLAxiom> removed = new HashSet<OWLAxiom>();
+		
+		Overlay(OWLOntology onto) {
+			this.index = AxiomKeyIndex.get(onto);
+		}
+		
+		boolean contains(OWLAxiom axiom) {
+			return getAdded(axiom.getAxiomWithoutAnnotations()).contains(axiom) 
+					|| (!removed.contains(axiom) && index.containsAxiom(axiom));
+		}
+		
+		Set<OWLAxiom> getAdded(OWLAxiom axBase) {
+			Set<OWLAxiom> added = addedByBase.get(axBase);
+			return (added != null) ? added : Collections.<OWLAxiom>emptySet();
+		}
+		
+		/**
+		 * @return true, if the axiom was not contained before
+		 */
+		boolean add(OWLAxiom axiom) {
+			if (contains(axiom)) {
+				return false;
+			}
+			if (!removed.remove(axiom)) {
+				addedByBase.computeIfAbsent(axiom.getAxiomWithoutAnnotations(), key -> new HashSet<OWLAxiom>()).add(axiom);
+			}
+			return true;
+		}
+		
+		/**
+		 * @return true, if the axiom was contained before
+		 */
+		boolean remove(OWLAxiom axiom) {
+			if (!contains(axiom)) {
+				return false;
+			}
+			OWLAxiom axBase = axiom.getAxiomWithoutAnnotations();
+			Set<OWLAxiom> added = addedByBase.get(axBase);
+			if (added != null && added.remove(axiom)) {
+				if (added.isEmpty()) {
+					addedByBase.remove(axBase);
+				}
+			} else {
+				removed.add(axiom);
+			}
+			return true;
+		}
+	}
+
+}
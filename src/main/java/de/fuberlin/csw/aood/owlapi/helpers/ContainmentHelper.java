@@ -18,18 +18,21 @@
 package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
 
 import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLAxiom;
-import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
 import org.semanticweb.owlapi.model.parameters.Imports;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
 
 /**
  * This helper contains methods providing consistent information 
@@ -52,14 +55,7 @@ public class ContainmentHelper extends FilteringHelper {
 	 * 			false otherwise
 	 */
 	public static boolean containsAxiom1(OWLOntology onto, OWLAxiom axiom, Annotation annotation) {
-		boolean result = false;
-		Set<OWLAxiom> similarAxioms = getSimilarAxioms(axiom, onto);
-		for (OWLAxiom similarAxiom : similarAxioms) {
-			if (passAspectsTest(similarAxiom, onto, annotation)) {
-				result = true;
-			}
-		}	
-		return result;
+		return AxiomKeyIndex.get(onto).containsSimilar(axiom, getPredicate(onto, annotation));
 	}
 	
 	/**
@@ -83,11 +79,64 @@ public class ContainmentHelper extends FilteringHelper {
 	public static boolean containsAxiom3(OWLAxiom axiom, Imports imports,
 			AxiomAnnotations axiomAnnotations, OWLOntology ontology,
 			Annotation annotation) {	
-		Set<OWLAxiom> axsToTest = getSimilarAxioms(
-				axiom, imports, axiomAnnotations, ontology); 
-		// check if one of the axioms in question has current aspects	
-		for (OWLAxiom ax : axsToTest) {
-			if (passAspectsTest(ax, ontology, annotation)) {
+		return containsSimilar(getKeyIndexes(ontology, imports), axiom, axiomAnnotations, ontology, getPredicate(ontology, annotation));
+	}
+	
+	/**
+	 * checks for each of these axioms whether a given ontology contains it considering this aspect predicate, 
+	 * looking up the indexes of the ontologies only once for all axioms
+	 * 
+	 * @param axioms
+	 * 			axioms to be checked
+	 * @param imports
+	 * 			Imports (included or exluded)
+	 * @param axiomAnnotations
+	 * 			AxiomAnnotations (consider or ignore)
+	 * @param ontology
+	 * 			Ontology to be searched
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 * @return
+	 * 			bitset having the bit at the position of every axiom set, 
+	 * 			if ontology contains the axiom like this which has current aspects
+	 */
+	public static BitSet containsAxioms(List<? extends OWLAxiom> axioms, Imports imports, 
+			AxiomAnnotations axiomAnnotations, OWLOntology ontology, AspectPredicate predicate) {
+		List<AxiomKeyIndex> keyIndexes = getKeyIndexes(ontology, imports);
+		BitSet contained = new BitSet(axioms.size());
+		int i = 0;
+		for (OWLAxiom axiom : axioms) {
+			if (containsSimilar(keyIndexes, axiom, axiomAnnotations, ontology, predicate)) {
+				contained.set(i);
+			}
+			i++;
+		}
+		return contained;
+	}
+	
+	/**
+	 * checks whether a given ontology contains any of these axioms considering this aspect predicate, 
+	 * looking up the indexes of the ontologies only once for all axioms
+	 * 
+	 * @param axioms
+	 * 			axioms to be checked
+	 * @param imports
+	 * 			Imports (included or exluded)
+	 * @param axiomAnnotations
+	 * 			AxiomAnnotations (consider or ignore)
+	 * @param ontology
+	 * 			Ontology to be searched
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 * @return
+	 * 			true, if ontology contains one of the axioms like this which has current aspects; 
+	 * 			false otherwise
+	 */
+	public static boolean containsAnyAxiom(Iterable<? extends OWLAxiom> axioms, Imports imports, 
+			AxiomAnnotations axiomAnnotations, OWLOntology ontology, AspectPredicate predicate) {
+		List<AxiomKeyIndex> keyIndexes = getKeyIndexes(ontology, imports);
+		for (OWLAxiom axiom : axioms) {
+			if (containsSimilar(keyIndexes, axiom, axiomAnnotations, ontology, predicate)) {
 				return true;
 			}
 		}
@@ -149,37 +198,63 @@ public class ContainmentHelper extends FilteringHelper {
 	// ------------------------ HELPER ------------------------
 	
 	/**
-	 * returns a set of axioms from this ontology which are similar to this axiom 
-	 * if aspect annotations are ignored
-	 * 
-	 * @param axiom
-	 * 			axiom for which the similar axioms have to be found
+	 * @param ontology
+	 * 			ontology to be searched
 	 * @param imports
 	 * 			info whether to include imports
+	 * @return axiom key indexes of this ontology and, if imports are included, of its imports closure 
+	 * 			(index of this ontology first)
+	 */
+	private static List<AxiomKeyIndex> getKeyIndexes(OWLOntology ontology, Imports imports) {
+		List<AxiomKeyIndex> keyIndexes = new ArrayList<AxiomKeyIndex>();
+		keyIndexes.add(AxiomKeyIndex.get(ontology));
+		if (imports == Imports.INCLUDED) {
+			for (OWLOntology onto : ontology.getImportsClosure()) {
+				if (onto != ontology) {
+					keyIndexes.add(AxiomKeyIndex.get(onto));
+				}
+			}
+		}
+		return keyIndexes;
+	}
+	
+	/**
+	 * checks whether any of these indexed ontologies contains this axiom considering current aspects
+	 * 
+	 * @param keyIndexes
+	 * 			axiom key indexes of the ontologies to be searched (index of the given ontology first)
+	 * @param axiom
+	 * 			axiom to be checked
 	 * @param axiomAnnotations
-	 * 			info whether to consider annotations
+	 * 			AxiomAnnotations (consider or ignore)
 	 * @param ontology
-	 * 			ontology to be checked
-	 * @return set of similar axioms
+	 * 			ontology whose aspect properties are used
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 * @return
+	 * 			true, if one of the ontologies contains the axiom like this which has current aspects; 
+	 * 			false otherwise
 	 */
-	private static Set<OWLAxiom> getSimilarAxioms(OWLAxiom axiom,
-			Imports imports, AxiomAnnotations axiomAnnotations,
-			OWLOntology ontology) {
-		OWLDataFactory df = ontology.getOWLOntologyManager().getOWLDataFactory();
-		Set<OWLAxiom> similarAxioms = ontology.getAxiomsIgnoreAnnotations(axiom, imports);
-		Set<OWLAxiom> axsToTest = new HashSet<OWLAxiom>();	
-		
-		if (axiomAnnotations.equals(AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS)) {
-			axsToTest = similarAxioms;
-		} else { // do not ignore axiom annotations		
-			for (OWLAxiom similarAxiom : similarAxioms) {
-				Set<OWLAnnotation> regularAnnotations = findRegularAnnotations(df, similarAxiom.getAnnotations());
-				if (regularAnnotations.equals(axiom.getAnnotations())) {
-					axsToTest.add(similarAxiom);
+	private static boolean containsSimilar(List<AxiomKeyIndex> keyIndexes, OWLAxiom axiom, 
+			AxiomAnnotations axiomAnnotations, OWLOntology ontology, AspectPredicate predicate) {
+		// annotations of the passed axiom are compared with regular annotations of axioms in the ontology
+		Set<OWLAnnotation> regularAnnotations = 
+				axiomAnnotations.equals(AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS) ? null : axiom.getAnnotations();
+		AxiomKeyIndex index = keyIndexes.get(0);
+		if (keyIndexes.size() == 1) {
+			return index.containsSimilar(axiom, regularAnnotations, predicate);
+		}
+		// axioms of imported ontologies are tested with the aspect properties of this ontology
+		for (AxiomKeyIndex keyIndex : keyIndexes) {
+			// check if one of the axioms in question has current aspects
+			for (OWLAxiom ax : keyIndex.getVariants(axiom)) {
+				if ((regularAnnotations == null || index.getRegularAnnotations(ax).equals(regularAnnotations)) 
+						&& passAspectsTest(ax, ontology, predicate)) {
+					return true;
 				}
-			}		
+			}
 		}
-		return axsToTest;
+		return false;
 	}
 
 }
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.helpers;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+
+/**
+ * Read-only, lazily evaluated view of the axioms of a collection which have current aspects 
+ * (without annotations, like the result of {@link FilteringHelperAxioms#filterAxioms}).
+ * 
+ * <p>Iteration filters the underlying collection on the fly, 
+ * isEmpty() and contains() stop at the first match. 
+ * An iterator remembers the axioms it has returned, to return each of them once, 
+ * so a complete iteration builds a copy of the filtered set as well (which is not kept). 
+ * The filtered set is materialized and kept only for operations which need all elements, e.g. size(). 
+ * Aspects are evaluated when the view is accessed, not when it is created.
+ */
+class FilteredAxiomSet extends AbstractSet<OWLAxiom> {
+	
+	private final OWLOntology onto;
+	private final Collection<? extends OWLAxiom> source;
+	private final AspectPredicate predicate;
+	/** filtered axioms, once materialized */
+	private volatile Set<OWLAxiom> materialized;
+	
+	/**
+	 * @param onto
+	 * 			ontology to be checked
+	 * @param source
+	 * 			axioms to be filtered
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 */
+	FilteredAxiomSet(OWLOntology onto, Collection<? extends OWLAxiom> source, AspectPredicate predicate) {
+		this.onto = onto;
+		this.source = source;
+		this.predicate = predicate;
+	}
+	
+	@Override
+	public Iterator<OWLAxiom> iterator() {
+		Set<OWLAxiom> axioms = materialized;
+		if (axioms != null) {
+			return axioms.iterator();
+		}
+		return new FilteringIterator();
+	}
+	
+	@Override
+	public int size() {
+		return materialize().size();
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		Set<OWLAxiom> axioms = materialized;
+		if (axioms != null) {
+			return axioms.isEmpty();
+		}
+		AspectIndex index = AspectIndex.get(onto);
+		for (OWLAxiom ax : source) {
+			if (index.matches(ax, predicate)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		Set<OWLAxiom> axioms = materialized;
+		if (axioms != null) {
+			return axioms.contains(o);
+		}
+		if (!(o instanceof OWLAxiom) || ((OWLAxiom) o).isAnnotated()) {
+			// the view contains axioms without annotations only
+			return false;
+		}
+		OWLAxiom axiom = (OWLAxiom) o;
+		AspectIndex index = AspectIndex.get(onto);
+		if (source instanceof Set) {
+			// probe the annotated variants of this axiom instead of scanning the whole source
+			for (OWLOntology importedOnto : onto.getImportsClosure()) {
+				for (OWLAxiom candidate : AxiomKeyIndex.get(importedOnto).getVariants(axiom)) {
+					if (source.contains(candidate) && index.matches(candidate, predicate)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		for (OWLAxiom ax : source) {
+			if (index.matches(ax, predicate) && ax.getAxiomWithoutAnnotations().equals(axiom)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * computes the filtered set once and keeps it for further calls
+	 * 
+	 * @return filtered axioms (unmodifiable)
+	 */
+	private synchronized Set<OWLAxiom> materialize() {
+		if (materialized == null) {
+			AspectIndex index = AspectIndex.get(onto);
+			Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+			for (OWLAxiom ax : source) {
+				if (index.matches(ax, predicate)) {
+					axioms.add(ax.getAxiomWithoutAnnotations());
+				}
+			}
+			materialized = Collections.unmodifiableSet(axioms);
+		}
+		return materialized;
+	}
+	
+	/**
+	 * iterates over the source, returning axioms with current aspects without annotations.
+	 * Axioms which differ only in annotations are returned once, 
+	 * so the returned axioms are kept until the iterator is discarded.
+	 */
+	private class FilteringIterator implements Iterator<OWLAxiom> {
+		
+		private final Iterator<? extends OWLAxiom> it = source.iterator();
+		private final AspectIndex index = AspectIndex.get(onto);
+		private final Set<OWLAxiom> returned = new HashSet<OWLAxiom>();
+		private OWLAxiom next;
+		
+		@Override
+		public boolean hasNext() {
+			while (next == null && it.hasNext()) {
+				OWLAxiom ax = it.next();
+				if (index.matches(ax, predicate)) {
+					OWLAxiom axBase = ax.getAxiomWithoutAnnotations();
+					if (returned.add(axBase)) {
+						next = axBase;
+					}
+				}
+			}
+			return next != null;
+		}
+		
+		@Override
+		public OWLAxiom next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			OWLAxiom result = next;
+			next = null;
+			return result;
+		}
+	}
+
+}
@@ -18,18 +18,24 @@
 package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
 
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
-import org.semanticweb.owlapi.search.EntitySearcher;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AspectProperties;
 
 /**
  * This helper provides methods related to 
@@ -38,6 +44,83 @@ import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
  */
 public abstract class FilteringHelper extends BasicHelper {
 	
+	private static final int parallelFilteringThreshold;
+	
+	static {
+		parallelFilteringThreshold = (int)Config.instance().get("parallelFilteringThreshold");
+	}
+	
+	/**
+	 * maps all elements of this collection and collects the results which are not null. 
+	 * Large collections (see Config option parallelFilteringThreshold) are split 
+	 * and processed in parallel, so the mapping must not modify shared state.
+	 * 
+	 * @param elements
+	 * 			elements to be filtered
+	 * @param mapping
+	 * 			function returning the result for an element, or null if the element is filtered out
+	 * @return set of results
+	 */
+	protected static <T, R> Set<R> collect(Collection<? extends T> elements, Function<? super T, ? extends R> mapping) {
+		if (parallelFilteringThreshold <= 0 || elements.size() < parallelFilteringThreshold) {
+			Set<R> result = new HashSet<R>();
+			for (T element : elements) {
+				R r = mapping.apply(element);
+				if (r != null) {
+					result.add(r);
+				}
+			}
+			return result;
+		}
+		return pool.invoke(new CollectTask<T, R>(elements.toArray(), 0, elements.size(), mapping));
+	}
+	
+	/**
+	 * fork/join task collecting the results of a range of elements
+	 */
+	private static class CollectTask<T, R> extends RecursiveTask<Set<R>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Object[] elements;
+		private final int from;
+		private final int to;
+		private final Function<? super T, ? extends R> mapping;
+		
+		CollectTask(Object[] elements, int from, int to, Function<? super T, ? extends R> mapping) {
+			this.elements = elements;
+			this.from = from;
+			this.to = to;
+			this.mapping = mapping;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Set<R> compute() {
+			if (to - from <= Math.max(parallelFilteringThreshold / 2, 1)) {
+				Set<R> result = new HashSet<R>();
+				for (int i = from; i < to; i++) {
+					R r = mapping.apply((T) elements[i]);
+					if (r != null) {
+						result.add(r);
+					}
+				}
+				return result;
+			}
+			int middle = (from + to) >>> 1;
+			CollectTask<T, R> left = new CollectTask<T, R>(elements, from, middle, mapping);
+			left.fork();
+			Set<R> result = new CollectTask<T, R>(elements, middle, to, mapping).compute();
+			Set<R> leftResult = left.join();
+			// merge the smaller set into the larger one
+			if (leftResult.size() > result.size()) {
+				leftResult.addAll(result);
+				return leftResult;
+			}
+			result.addAll(leftResult);
+			return result;
+		}
+	}
 	
 	/**
 	 * checks if this axiom in this ontology has these aspects
@@ -53,12 +136,7 @@ public abstract class FilteringHelper extends BasicHelper {
 	 * 			false otherwise
 	 */
 	public static boolean passAspectsTest(OWLAxiom ax, OWLOntology onto, String[][] aspects) {
-		for (String[] asps : aspects) {
-			if (hasAllAspects(ax, onto, asps)) {
-				return true;
-			}
-		}
-		return false;
+		return passAspectsTest(ax, onto, AspectPredicate.ofCached(aspects, onto.getOWLOntologyManager().getOWLDataFactory()));
 	}
 	
 	/**
@@ -75,13 +153,24 @@ public abstract class FilteringHelper extends BasicHelper {
 	 * 			false otherwise
 	 */
 	public static boolean passAspectsTest(OWLAxiom ax, OWLOntology onto, Annotation annotationWithCurrentAspects) {
-		String[][] aspects = transformAnnotationToAspects(annotationWithCurrentAspects);
-		for (String[] asps : aspects) {
-			if (hasAllAspects(ax, onto, asps)) {
-				return true;
-			}
-		}
-		return false;
+		return passAspectsTest(ax, onto, getPredicate(onto, annotationWithCurrentAspects));
+	}
+	
+	/**
+	 * checks if this axiom in this ontology satisfies this aspect predicate
+	 * 
+	 * @param ax
+	 * 			axiom to be checked
+	 * @param onto
+	 * 			ontology to be searched
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 * @return
+	 * 			true, if axiom has these aspects, 
+	 * 			false otherwise
+	 */
+	public static boolean passAspectsTest(OWLAxiom ax, OWLOntology onto, AspectPredicate predicate) {
+		return AspectIndex.get(onto).matches(ax, predicate);
 	}
 
 	
@@ -107,37 +196,17 @@ public abstract class FilteringHelper extends BasicHelper {
 
 	/**
 	 * Returns all annotation properties that are transitively sub-property of
-	 * the top annotation property.
+	 * the aspect annotation property isPointcutOf (including isPointcutOf itself).
+	 * The result is computed once per ontology and cached 
+	 * until the annotation property hierarchy or the imports change.
 	 * 
 	 * @param onto
 	 * 			Ontology
-	 * @return All annotation properties in the given ontology that are transitively sub-property of
-	 * the top annotation property.
+	 * @return All annotation properties in the given ontology including imports closure 
+	 * that are transitively sub-property of isPointcutOf (unmodifiable).
 	 */
 	public static Set<OWLAnnotationProperty> getAllAspectAnnotationProperties (OWLOntology onto) {
-		return fillSubProperties(new HashSet<OWLAnnotationProperty>(), onto.getOWLOntologyManager().getOWLDataFactory().getOWLAnnotationProperty(isPointcutOfPropertyIRI), onto);
-	}
-	
-	/**
-	 * adds this annotation property to this set 
-	 * and fills it also with subproperties of this property in this ontology including imports closure
-	 * 
-	 * @param set
-	 * 			set of annotation properties
-	 * @param property
-	 * 			annotation property to be added together with its subproperties
-	 * @param onto
-	 * 			ontology
-	 * @return
-	 * 			set filled with this property and its subproperties
-	 */
-	private static Set<OWLAnnotationProperty> fillSubProperties(Set<OWLAnnotationProperty> set, OWLAnnotationProperty property, OWLOntology onto) {
-		set.add(property);
-		for(OWLAnnotationProperty subProperty : EntitySearcher.getSubProperties(property, onto, true)) {
-			fillSubProperties(set, subProperty, onto);
-		}
-		return set;
+		return AspectProperties.get(onto);
 	}
 	
-	
 }
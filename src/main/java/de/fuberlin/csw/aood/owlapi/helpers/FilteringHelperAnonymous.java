@@ -18,21 +18,31 @@
 package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
-import java.util.HashSet;
 import java.util.Set;
 
 import org.semanticweb.owlapi.model.OWLAnonymousIndividual;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AnonymousIndividualIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
 
 /**
- * This helper provides methods to filter owl anonymous individuals considering current aspects 
+ * This helper provides methods to filter owl anonymous individuals considering current aspects, 
+ * using the {@link AnonymousIndividualIndex} if configured
  */
 public class FilteringHelperAnonymous extends FilteringHelper {
 	
+	private static final boolean indexAnonymousIndividuals;
+	
+	static {
+		indexAnonymousIndividuals = (boolean)Config.instance().get("indexAnonymousIndividuals");
+	}
+	
 	/**
 	 * filters this set of anonymous individuals with respect to current aspects
 	 * 
@@ -48,20 +58,26 @@ public class FilteringHelperAnonymous extends FilteringHelper {
 	 */
 	public static Set<OWLAnonymousIndividual> filterAnonymousIndividuals(
 			Set<OWLAnonymousIndividual> anInds, OWLOntology onto, Annotation annotation) {
-		Set<OWLAnonymousIndividual> result = new HashSet<OWLAnonymousIndividual>();
-		String[][] aspects = transformAnnotationToAspects(annotation);
-		for (OWLAnonymousIndividual anInd : anInds) {
+		AspectPredicate predicate = getPredicate(onto, annotation);
+		if (indexAnonymousIndividuals) {
+			AnonymousIndividualIndex index = AnonymousIndividualIndex.get(onto);
 			// check if any of the axiom in this ontology referring to this anonymous individual 
 			// has current aspects
-			for (OWLAxiom ax : onto.getAxioms()) {
+			return collect(anInds, anInd -> index.isReferencedWith(anInd, predicate) ? anInd : null);
+		}
+		AspectIndex index = AspectIndex.get(onto);
+		Set<OWLAxiom> axioms = onto.getAxioms();
+		return collect(anInds, anInd -> {
+			// check if any of the axiom in this ontology referring to this anonymous individual 
+			// has current aspects
+			for (OWLAxiom ax : axioms) {
 				if(ax.getAnonymousIndividuals().contains(anInd) &&
-						passAspectsTest(ax, onto, aspects)) {
-					result.add(anInd);
-					break;
+						index.matches(ax, predicate)) {
+					return anInd;
 				}
 			}
-		}
-		return result;
+			return null;
+		});
 	}
 
 }
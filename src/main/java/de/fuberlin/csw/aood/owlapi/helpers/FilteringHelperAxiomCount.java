@@ -18,22 +18,57 @@
 package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLAxiom;
-import org.semanticweb.owlapi.model.OWLLogicalAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.parameters.Imports;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectClasses;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomCounts;
+import de.fuberlin.csw.aood.owlapi.index.ModuleCache;
 
 /**
- * This helper handles methods related to counting owl axioms considering current aspects 
+ * This helper handles methods related to counting owl axioms considering current aspects.
+ * 
+ * <p>Axioms are counted without building the filtered set, 
+ * using the maintained counters of {@link AxiomCounts} if configured. 
+ * If modules are expanded, the count of the expanded set is cached until the ontology changes.
  */
 public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	
+	/** maximum number of cached counts per ontology */
+	private static final int MAX_CACHED_COUNTS = 64;
+	
+	private static final boolean expandModules;
+	private static final boolean maintainAxiomCounts;
+	
+	static {
+		expandModules = (boolean)Config.instance().get("expandModules");
+		maintainAxiomCounts = (boolean)Config.instance().get("maintainAxiomCounts");
+	}
+	
+	/** counts of expanded sets by ontology (weak, identity based) */
+	private static final Map<OWLOntology, Cache<CountKey, Integer>> expandedCounts = new MapMaker().weakKeys().makeMap();
+	
+	/** kinds of counted axioms without an axiom type */
+	private static final String ALL_AXIOMS = "all", LOGICAL_AXIOMS = "logical";
+	
 	/**
 	 * count axioms with current aspects in this ontology
 	 * 
@@ -44,8 +79,7 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	 * @return number of axioms with current aspects
 	 */
 	public static int handleAxiomCount(OWLOntology ontology, Annotation annotation) {
-		Set<OWLAxiom> axs = ontology.getAxioms();
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getAxioms(), ALL_AXIOMS, Imports.EXCLUDED);
 	}
 
 	/**
@@ -61,8 +95,7 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	 */
 	public static int handleAxiomCount1(Imports imports,
 			OWLOntology ontology, Annotation annotation) {
-		Set<OWLAxiom> axs = ontology.getAxioms(imports);
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getAxioms(imports), ALL_AXIOMS, imports);
 	}
 	
 	/**
@@ -80,8 +113,7 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	 */
 	public static <T extends OWLAxiom> int handleAxiomCount1(AxiomType<T> axType,
 			OWLOntology ontology, Annotation annotation) {
-		Set<T> axs = ontology.getAxioms(axType);
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getAxioms(axType), axType, Imports.EXCLUDED);
 	}
 	
 	/**
@@ -103,8 +135,7 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	public static <T extends OWLAxiom> int handleAxiomCount2(
 			AxiomType<T> axType, Imports imports,
 			OWLOntology ontology, Annotation annotation) {
-		Set<T> axs = ontology.getAxioms(axType, imports);
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getAxioms(axType, imports), axType, imports);
 	}
 
 	/**
@@ -118,8 +149,7 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	 */
 	public static int handleLogicalAxiomCount(
 			OWLOntology ontology, Annotation annotation) {
-		Set<OWLLogicalAxiom> axs = ontology.getLogicalAxioms();
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getLogicalAxioms(), LOGICAL_AXIOMS, Imports.EXCLUDED);
 	}
 	
 	/**
@@ -135,30 +165,138 @@ public class FilteringHelperAxiomCount extends FilteringHelperAxioms {
 	 */
 	public static int handleLogicalAxiomCountImports(
 			Imports imports, OWLOntology ontology, Annotation annotation) {
-		Set<OWLLogicalAxiom> axs = ontology.getLogicalAxioms(imports);
-		return countFilteredAxioms(ontology, annotation, axs);
+		return countFilteredAxioms(ontology, annotation, () -> ontology.getLogicalAxioms(imports), LOGICAL_AXIOMS, imports);
 	}
 	
 	// ----------------- HELPER ------------------------------
 	
 	/**
-	 * counts the number of the axioms in this set which are associated with current aspects
+	 * counts the number of the axioms in this set which are associated with current aspects. 
+	 * The set is only fetched if the maintained counters cannot be used.
 	 * 
 	 * @param ontology
 	 * 			ontology to be checked
 	 * @param annotation
 	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
 	 * @param axs
-	 * 			set of axioms to be filtered
+	 * 			supplier of the set of axioms to be filtered
+	 * @param axiomKind
+	 * 			axiom type, ALL_AXIOMS or LOGICAL_AXIOMS, describing the axiom set
+	 * @param imports
+	 * 			info whether the axiom set includes imports
 	 * @return
-	 * 			subset of this axiom set
+	 * 			size of the subset of this axiom set
 	 * 				containing only axioms associated with current aspects in this ontology
 	 */
 	private static int countFilteredAxioms(OWLOntology ontology,
-			Annotation annotation, Set<? extends OWLAxiom> axs) {
-		@SuppressWarnings("unchecked")
-		Set<OWLAxiom> filteredAxs = filterAxioms(ontology, (Set<OWLAxiom>) axs, annotation);	
-		return filteredAxs.size();
+			Annotation annotation, Supplier<Set<? extends OWLAxiom>> axs, Object axiomKind, Imports imports) {
+		AspectPredicate predicate = getPredicate(ontology, annotation);
+		if (!expandModules) {
+			// counters do not cover axioms of imported ontologies or predicates satisfied without aspects
+			if (maintainAxiomCounts && (imports == Imports.EXCLUDED || ontology.getImports().isEmpty()) 
+					&& !predicate.testClass(AspectClasses.NO_ASPECTS)) {
+				return countMaintained(ontology, predicate, axiomKind);
+			}
+			return countMatchingAxioms(ontology, predicate, axs.get());
+		}
+		// the expanded module depends on all filtered axioms, so the count is cached as a whole
+		Cache<CountKey, Integer> counts;
+		synchronized (expandedCounts) {
+			counts = expandedCounts.get(ontology);
+			if (counts == null) {
+				counts = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_COUNTS).build();
+				expandedCounts.put(ontology, counts);
+			}
+		}
+		CountKey key = new CountKey(axiomKind, imports, predicate, ModuleCache.getRevision(ontology));
+		try {
+			return counts.get(key, () -> {
+				@SuppressWarnings("unchecked")
+				Set<OWLAxiom> filteredAxs = filterAxioms(ontology, (Set<OWLAxiom>) axs.get(), annotation);
+				return filteredAxs.size();
+			});
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * counts the axioms of this kind which satisfy this predicate using the maintained counters of this ontology
+	 * 
+	 * @param ontology
+	 * 			ontology to be checked
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @param axiomKind
+	 * 			axiom type, ALL_AXIOMS or LOGICAL_AXIOMS
+	 * @return number of matching axioms without annotations
+	 */
+	private static int countMaintained(OWLOntology ontology, AspectPredicate predicate, Object axiomKind) {
+		AxiomCounts counts = AxiomCounts.get(ontology);
+		if (axiomKind == ALL_AXIOMS) {
+			return counts.count(predicate);
+		} else if (axiomKind == LOGICAL_AXIOMS) {
+			return counts.countLogical(predicate);
+		}
+		return counts.count(predicate, (AxiomType<?>) axiomKind);
+	}
+	
+	/**
+	 * counts the axioms in this set which satisfy this predicate, 
+	 * counting axioms which differ only in annotations once
+	 * 
+	 * @param ontology
+	 * 			ontology to be checked
+	 * @param predicate
+	 * 			predicate specifying current aspects
+	 * @param axs
+	 * 			set of axioms to be counted
+	 * @return number of matching axioms without annotations
+	 */
+	private static int countMatchingAxioms(OWLOntology ontology, AspectPredicate predicate, 
+			Set<? extends OWLAxiom> axs) {
+		AspectIndex index = AspectIndex.get(ontology);
+		Set<OWLAxiom> matching = new HashSet<OWLAxiom>();
+		for (OWLAxiom ax : axs) {
+			if (index.matches(ax, predicate)) {
+				// axioms without annotations are used as they are
+				matching.add(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax);
+			}
+		}
+		return matching.size();
+	}
+	
+	/**
+	 * key of a cached count of an expanded set
+	 */
+	private static class CountKey {
+		
+		private final Object axiomKind;
+		private final Imports imports;
+		private final AspectPredicate predicate;
+		private final long revision;
+		
+		CountKey(Object axiomKind, Imports imports, AspectPredicate predicate, long revision) {
+			this.axiomKind = axiomKind;
+			this.imports = imports;
+			this.predicate = predicate;
+			this.revision = revision;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(axiomKind, imports, predicate, revision);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CountKey)) {
+				return false;
+			}
+			CountKey other = (CountKey) obj;
+			return axiomKind.equals(other.axiomKind) && imports == other.imports 
+					&& predicate == other.predicate && revision == other.revision;
+		}
 	}
 	
 
@@ -24,15 +24,20 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
 
 import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+import de.fuberlin.csw.aood.owlapi.index.ModuleCache;
 import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
-import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
 
 /**
  * This helper provides methods to filter owl axioms considering current aspects 
@@ -42,10 +47,60 @@ public class FilteringHelperAxioms extends FilteringHelper {
 	private static final Logger log = Logger.getLogger(FilteringHelperAxioms.class.getName());
 	
 	private static final boolean expandModules;
+	private static final boolean lazyAxiomViews;
+	private static final boolean snapshotReads;
 	
 	// TODO move to more sensible place
 	static {
 		expandModules = (boolean)Config.instance().get("expandModules");
+		lazyAxiomViews = (boolean)Config.instance().get("lazyAxiomViews");
+		snapshotReads = (boolean)Config.instance().get("snapshotReads");
+	}
+	
+	/**
+	 * answers this call of getAxioms() or getLogicalAxioms() from a snapshot of the axiom key index, 
+	 * without reading the axiom sets of the ontology which may be changed concurrently
+	 * 
+	 * @param onto
+	 * 			ontology to be queried
+	 * @param methodName
+	 * 			name of the called method
+	 * @param args
+	 * 			arguments of the call
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @return axioms associated with current aspects (without annotations), 
+	 * 			or null if snapshot reads are not configured or the call cannot be answered from a snapshot
+	 */
+	public static Set<? extends OWLAxiom> filterAxiomsFromSnapshot(OWLOntology onto, String methodName, 
+			Object[] args, Annotation annotation) {
+		if (!snapshotReads || expandModules) {
+			return null;
+		}
+		AxiomType<?> axiomType = null;
+		Imports imports = Imports.EXCLUDED;
+		for (Object arg : args) {
+			if (arg instanceof AxiomType) {
+				axiomType = (AxiomType<?>) arg;
+			} else if (arg instanceof Imports) {
+				imports = (Imports) arg;
+			} else {
+				return null;
+			}
+		}
+		// the imports closure has no common version, so only the ontology itself is read
+		if (imports == Imports.INCLUDED && !onto.getImports().isEmpty()) {
+			return null;
+		}
+		if (methodName.equals("getAxioms")) {
+			AxiomKeyIndex.Snapshot snapshot = AxiomKeyIndex.snapshot(onto);
+			AspectPredicate predicate = getPredicate(onto, annotation);
+			return (axiomType != null) ? snapshot.getAxioms(axiomType, predicate) : snapshot.getAxioms(predicate);
+		}
+		if (methodName.equals("getLogicalAxioms") && axiomType == null) {
+			return AxiomKeyIndex.snapshot(onto).getLogicalAxioms(getPredicate(onto, annotation));
+		}
+		return null;
 	}
 	
 	/**
@@ -57,17 +112,18 @@ public class FilteringHelperAxioms extends FilteringHelper {
 	 * 			set of axioms to be filtered
 	 * @param annotation
 	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
-	 * @return filtered axioms
+	 * @return filtered axioms 
+	 * 			(a lazy read-only view if lazyAxiomViews is configured and modules are not expanded)
 	 */
 	public static Set<OWLAxiom> filterAxioms(OWLOntology onto, Set<OWLAxiom> axioms, Annotation annotation) {
 		// The passed annotation can be only of type OWLAspectAnd or OWLAspectOr
-		String[][] aspects = transformAnnotationToAspects(annotation);
-		Set<OWLAxiom> filteredAxioms = new HashSet<OWLAxiom>();
-		for (OWLAxiom ax : axioms) {
-			if (passAspectsTest(ax, onto, aspects)) {
-				filteredAxioms.add(ax.getAxiomWithoutAnnotations());
-			}	
+		AspectPredicate predicate = getPredicate(onto, annotation);
+		if (lazyAxiomViews && !expandModules) {
+			return new FilteredAxiomSet(onto, axioms, predicate);
 		}
+		AspectIndex index = AspectIndex.get(onto);
+		Set<OWLAxiom> filteredAxioms = collect(axioms, 
+				ax -> index.matches(ax, predicate) ? ax.getAxiomWithoutAnnotations() : null);
 		
 		// TODO move to specialized Helper class
 		if (expandModules) {
@@ -75,8 +131,7 @@ public class FilteringHelperAxioms extends FilteringHelper {
 			for (OWLAxiom axiom : filteredAxioms) {
 				signature.addAll(axiom.getSignature());
 			}
-			SyntacticLocalityModuleExtractor extractor = new SyntacticLocalityModuleExtractor(onto.getOWLOntologyManager(), onto, ModuleType.STAR);
-			Set<OWLAxiom> expandedModule = extractor.extract(signature);
+			Set<OWLAxiom> expandedModule = ModuleCache.getModule(onto, ModuleType.STAR, signature);
 			
 			filteredAxioms.addAll(expandedModule);
 			
@@ -28,14 +28,25 @@ import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.DeclarationIndex;
 
 /**
- * This helper provides methods to filter owl entities considering current aspects 
+ * This helper provides methods to filter owl entities considering current aspects, 
+ * using the {@link DeclarationIndex} if configured
  */
 public class FilteringHelperEntities extends FilteringHelper {	
 	
+	private static final boolean indexDeclarations;
+	
+	static {
+		indexDeclarations = (boolean)Config.instance().get("indexDeclarations");
+	}
+	
 	// ----------------- Helpers for Sets ------------------------------
 	
 	/**
@@ -76,22 +87,29 @@ public class FilteringHelperEntities extends FilteringHelper {
 	 */
 	public static Set<OWLEntity> filterEntities(OWLOntology onto, Set<OWLEntity> entities, Annotation annotation) {
 		// The passed annotation can be only instance of OWLAspectAnd or OWLAspectOr
-		String[][] aspects = transformAnnotationToAspects(annotation);
-		Set<OWLEntity> filteredEntities = new HashSet<OWLEntity>();
-		for (OWLEntity entity : entities) {	
-			// we used to check for annotations on entity, the following way: 
-			// if (EntitySearcher.getAnnotations(entity, onto).containsAll(createSetOfRelevantAnnotations(onto, currentAspects))) { }
-			// but changed it to checking annotations on referencing declaration axioms. 
-			// maybe we should also check for other referencing axioms or declaration axs in imports...
-			Collection<OWLAxiom> referencingAxioms = EntitySearcher.getReferencingAxioms(entity, onto);
-			for (OWLAxiom refAx : referencingAxioms) {
-				if ((refAx instanceof OWLDeclarationAxiom) 
-						&& passAspectsTest(refAx, onto, aspects)) {
-					filteredEntities.add(entity);
-				}
+		AspectPredicate predicate = getPredicate(onto, annotation);
+		// we used to check for annotations on entity, the following way: 
+		// if (EntitySearcher.getAnnotations(entity, onto).containsAll(createSetOfRelevantAnnotations(onto, currentAspects))) { }
+		// but changed it to checking annotations on referencing declaration axioms. 
+		// maybe we should also check for other referencing axioms or declaration axs in imports...
+		if (indexDeclarations) {
+			DeclarationIndex index = DeclarationIndex.get(onto);
+			return collect(entities, entity -> index.isDeclaredWith(entity, predicate) ? entity : null);
+		}
+		AspectIndex index = AspectIndex.get(onto);
+		return collect(entities, entity -> hasDeclarationWithAspects(entity, onto, index, predicate) ? entity : null);
+	}
+	
+	private static boolean hasDeclarationWithAspects(OWLEntity entity, OWLOntology onto, 
+			AspectIndex index, AspectPredicate predicate) {
+		Collection<OWLAxiom> referencingAxioms = EntitySearcher.getReferencingAxioms(entity, onto);
+		for (OWLAxiom refAx : referencingAxioms) {
+			if ((refAx instanceof OWLDeclarationAxiom) 
+					&& index.matches(refAx, predicate)) {
+				return true;
 			}
 		}
-		return filteredEntities;
-	}	
+		return false;
+	}
 
 }
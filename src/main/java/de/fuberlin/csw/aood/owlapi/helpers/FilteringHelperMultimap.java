@@ -19,6 +19,7 @@ package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
 
+import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLDataPropertyAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLDataPropertyExpression;
 import org.semanticweb.owlapi.model.OWLIndividual;
@@ -30,17 +31,29 @@ import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.PropertyAssertionIndex;
 
 /**
- * This helper provides methods to filter multimaps of owl objects considering current aspects 
+ * This helper provides methods to filter multimaps of owl objects considering current aspects.
+ * Property values are looked up in the {@link PropertyAssertionIndex} of every ontology if configured, 
+ * otherwise in the assertion axioms of the individual, and returned as immutable multimaps.
  */
 public class FilteringHelperMultimap extends FilteringHelper {
 	
+	private static final boolean indexPropertyAssertions;
+	
+	static {
+		indexPropertyAssertions = (boolean)Config.instance().get("indexPropertyAssertions");
+	}
+	
     /**
      * Sorts and delegates to filtering the four different EntitySearcher methods which return multimaps: 
      * getObjectPropertyValues(), getNegativeObjectPropertyValues(), 
@@ -58,21 +71,19 @@ public class FilteringHelperMultimap extends FilteringHelper {
 	 */
 	public static Multimap<? extends OWLObject, ? extends OWLObject> filterMultimapFromOntologies(String methodName,
 			OWLIndividual userParam, Iterable<OWLOntology> ontologies, Annotation annotation) {
-		// Transform annotation
-		String[][] aspects = transformAnnotationToAspects(annotation);
 		Multimap<? extends OWLObject, ? extends OWLObject> result = LinkedListMultimap.create();	
 		switch (methodName) {
 			case "getObjectPropertyValues":
-				result = filterObjPropValues(userParam, ontologies, aspects);
+				result = filterObjPropValues(userParam, ontologies, annotation);
 				break;
 			case "getNegativeObjectPropertyValues":
-				result = filterNegObjPropValues(userParam, ontologies, aspects);
+				result = filterNegObjPropValues(userParam, ontologies, annotation);
 				break;
 			case "getDataPropertyValues":
-				result = filterDataPropValues(userParam, ontologies, aspects);
+				result = filterDataPropValues(userParam, ontologies, annotation);
 				break;
 			case "getNegativeDataPropertyValues":
-				result = filterNegDataPropValues(userParam, ontologies, aspects);		
+				result = filterNegDataPropValues(userParam, ontologies, annotation);		
 		}
 		return result;
 	}
@@ -86,22 +97,27 @@ public class FilteringHelperMultimap extends FilteringHelper {
      *        individual
      * @param ontologies
      *        ontologies to search
-     * @param aspects
-     *        aspects serving as filter criteria
+     * @param annotation
+     *        Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} serving as filter criteria
      * @return properties mapped to property values
      */
 	private static Multimap<OWLObjectPropertyExpression, OWLIndividual> filterObjPropValues(
 			OWLIndividual userParam, Iterable<OWLOntology> ontologies,
-			String[][] aspects) {
-        Multimap<OWLObjectPropertyExpression, OWLIndividual> resultMap = LinkedListMultimap.create();
+			Annotation annotation) {
+        ImmutableListMultimap.Builder<OWLObjectPropertyExpression, OWLIndividual> resultMap = ImmutableListMultimap.builder();
         for (OWLOntology onto : ontologies) {
+        	AspectPredicate predicate = getPredicate(onto, annotation);
+            if (indexPropertyAssertions) {
+            	PropertyAssertionIndex.get(onto).putValues(userParam, AxiomType.OBJECT_PROPERTY_ASSERTION, predicate, resultMap);
+            	continue;
+            }
             for (OWLObjectPropertyAssertionAxiom ax : onto.getObjectPropertyAssertionAxioms(userParam)) {
-            	if (passAspectsTest(ax, onto, aspects)) {
-            		 resultMap.put(ax.getProperty(), ax.getObject());
+            	if (passAspectsTest(ax, onto, predicate)) {
+            		resultMap.put(ax.getProperty(), ax.getObject());
             	}
             }
         }
-        return resultMap;
+        return resultMap.build();
 	}
 
     /**
@@ -113,21 +129,26 @@ public class FilteringHelperMultimap extends FilteringHelper {
      *        individual
      * @param ontologies
      *        ontologies to search
-     * @param aspects
-     *        aspects serving as filter criteria
+     * @param annotation
+     *        Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} serving as filter criteria
      * @return properties mapped to property values
      */
 	private static Multimap<OWLObjectPropertyExpression, OWLIndividual> filterNegObjPropValues(
-			OWLIndividual userParam, Iterable<OWLOntology> ontologies, String[][] aspects) {
-        Multimap<OWLObjectPropertyExpression, OWLIndividual> resultMap = LinkedListMultimap.create();
+			OWLIndividual userParam, Iterable<OWLOntology> ontologies, Annotation annotation) {
+        ImmutableListMultimap.Builder<OWLObjectPropertyExpression, OWLIndividual> resultMap = ImmutableListMultimap.builder();
         for (OWLOntology onto : ontologies) {
+        	AspectPredicate predicate = getPredicate(onto, annotation);
+            if (indexPropertyAssertions) {
+            	PropertyAssertionIndex.get(onto).putValues(userParam, AxiomType.NEGATIVE_OBJECT_PROPERTY_ASSERTION, predicate, resultMap);
+            	continue;
+            }
             for (OWLNegativeObjectPropertyAssertionAxiom ax : onto.getNegativeObjectPropertyAssertionAxioms(userParam)) {
-            	if (passAspectsTest(ax, onto, aspects)) {
-            		 resultMap.put(ax.getProperty(), ax.getObject());
+            	if (passAspectsTest(ax, onto, predicate)) {
+            		resultMap.put(ax.getProperty(), ax.getObject());
             	}
             }
         }
-        return resultMap;
+        return resultMap.build();
 	}
 
     /**
@@ -139,21 +160,26 @@ public class FilteringHelperMultimap extends FilteringHelper {
      *        individual
      * @param ontologies
      *        ontologies to search
-     * @param aspects
-     *        aspects serving as filter criteria
+     * @param annotation
+     *        Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} serving as filter criteria
      * @return properties mapped to property values
      */
 	private static Multimap<OWLDataPropertyExpression, OWLLiteral> filterDataPropValues(
-			OWLIndividual userParam, Iterable<OWLOntology> ontologies, String[][] aspects) {
-        Multimap<OWLDataPropertyExpression, OWLLiteral> resultMap = LinkedListMultimap.create();
+			OWLIndividual userParam, Iterable<OWLOntology> ontologies, Annotation annotation) {
+        ImmutableListMultimap.Builder<OWLDataPropertyExpression, OWLLiteral> resultMap = ImmutableListMultimap.builder();
         for (OWLOntology onto : ontologies) {
+        	AspectPredicate predicate = getPredicate(onto, annotation);
+            if (indexPropertyAssertions) {
+            	PropertyAssertionIndex.get(onto).putValues(userParam, AxiomType.DATA_PROPERTY_ASSERTION, predicate, resultMap);
+            	continue;
+            }
             for (OWLDataPropertyAssertionAxiom ax : onto.getDataPropertyAssertionAxioms(userParam)) {
-            	if (passAspectsTest(ax, onto, aspects)) {
-            		 resultMap.put(ax.getProperty(), ax.getObject());
+            	if (passAspectsTest(ax, onto, predicate)) {
+            		resultMap.put(ax.getProperty(), ax.getObject());
             	}
             }
         }
-        return resultMap;
+        return resultMap.build();
 	}
 
     /**
@@ -165,22 +191,27 @@ public class FilteringHelperMultimap extends FilteringHelper {
      *        individual
      * @param ontologies
      *        ontologies to search
-     * @param aspects
-     *        aspects serving as filter criteria
+     * @param annotation
+     *        Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} serving as filter criteria
      * @return properties mapped to property values
      */
 	private static Multimap<OWLDataPropertyExpression, OWLLiteral> filterNegDataPropValues(
 			OWLIndividual userParam, Iterable<OWLOntology> ontologies,
-			String[][] aspects) {
-        Multimap<OWLDataPropertyExpression, OWLLiteral> resultMap = LinkedListMultimap.create();
+			Annotation annotation) {
+        ImmutableListMultimap.Builder<OWLDataPropertyExpression, OWLLiteral> resultMap = ImmutableListMultimap.builder();
         for (OWLOntology onto : ontologies) {
+        	AspectPredicate predicate = getPredicate(onto, annotation);
+            if (indexPropertyAssertions) {
+            	PropertyAssertionIndex.get(onto).putValues(userParam, AxiomType.NEGATIVE_DATA_PROPERTY_ASSERTION, predicate, resultMap);
+            	continue;
+            }
             for (OWLNegativeDataPropertyAssertionAxiom ax : onto.getNegativeDataPropertyAssertionAxioms(userParam)) {
-            	if (passAspectsTest(ax, onto, aspects)) {
-            		 resultMap.put(ax.getProperty(), ax.getObject());
+            	if (passAspectsTest(ax, onto, predicate)) {
+            		resultMap.put(ax.getProperty(), ax.getObject());
             	}
             }
         }
-        return resultMap;
+        return resultMap.build();
 	}
 
 }
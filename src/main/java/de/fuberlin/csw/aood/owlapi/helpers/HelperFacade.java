@@ -57,6 +57,24 @@ public class HelperFacade {
 	public static Set<OWLAxiom> filterAxioms(OWLOntology ontology, Set<OWLAxiom> axioms, Annotation annotation) {
 		return FilteringHelperAxioms.filterAxioms(ontology, axioms, annotation);
 	}
+	
+	/**
+	 * answers a call of getAxioms() or getLogicalAxioms() from a snapshot, if snapshot reads are configured
+	 * 
+	 * @param ontology
+	 * 			ontology to be queried
+	 * @param methodName
+	 * 			name of the called method
+	 * @param args
+	 * 			arguments of the call
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @return axioms associated with current aspects, or null if the call has to proceed
+	 */
+	public static Set<? extends OWLAxiom> filterAxiomsFromSnapshot(OWLOntology ontology, String methodName, 
+			Object[] args, Annotation annotation) {
+		return FilteringHelperAxioms.filterAxiomsFromSnapshot(ontology, methodName, args, annotation);
+	}
 
 	/**
 	 * filters this set of entities with respect to current aspects specified in the annotation
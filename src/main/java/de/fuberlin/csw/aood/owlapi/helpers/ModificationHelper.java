@@ -20,19 +20,31 @@ package de.fuberlin.csw.aood.owlapi.helpers;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
 
 import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.RemoveAxiom;
 import org.semanticweb.owlapi.model.parameters.ChangeApplied;
 
+import de.fuberlin.csw.aood.owlapi.Config;
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+import de.fuberlin.csw.aood.owlapi.index.AxiomLocks;
+import de.fuberlin.csw.aood.owlapi.index.ManagerListeners;
 
 /**
  * This helper provides methods related to 
@@ -41,6 +53,12 @@ import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
  */
 public class ModificationHelper extends BasicHelper {
 	
+	private static final int parallelChangeThreshold;
+	
+	static {
+		parallelChangeThreshold = (int)Config.instance().get("parallelChangeThreshold");
+	}
+	
 	/**
 	 * delegates the change to be handled according to the type of the passed annotation specifying current aspects
 	 * 
@@ -60,7 +78,11 @@ public class ModificationHelper extends BasicHelper {
 	}
 	
 	/**
-	 * controls multiple changes to be applied, considering current aspects
+	 * controls multiple changes to be applied, considering current aspects. 
+	 * The resulting axiom changes are applied together, using as few applyChanges() calls as possible.
+	 * Long lists of axiom changes of several ontologies (see Config option parallelChangeThreshold) 
+	 * are split by ontology and the ontologies are changed in parallel, each in the order of its changes. 
+ * If changing one of them fails, the changes of the other ontologies are reverted.
 	 * 
 	 * @param changes
 	 * 			changes to be applied
@@ -69,28 +91,157 @@ public class ModificationHelper extends BasicHelper {
 	 * @return list of changes applied successfully (considering successful updating of aspect annotations)
 	 */
 	public static List<OWLOntologyChange> handleMultipleChanges(List<OWLOntologyChange> changes, Annotation annotation) {
+		List<Lock> locks = AxiomLocks.lockAxioms(getAxioms(changes));
+		try {
+			return handleChanges(changes, annotation);
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * see handleMultipleChanges(), called holding the locks of the changed axioms
+	 */
+	private static List<OWLOntologyChange> handleChanges(List<OWLOntologyChange> changes, Annotation annotation) {
+		if (parallelChangeThreshold > 0 && changes.size() >= parallelChangeThreshold) {
+			Map<OWLOntology, List<Integer>> positionsByOntology = partitionByOntology(changes);
+			if (positionsByOntology != null && positionsByOntology.size() > 1) {
+				return handleChangesInParallel(changes, positionsByOntology, annotation);
+			}
+		}
 		List<OWLOntologyChange> changesApplied = new ArrayList<OWLOntologyChange>();
+		ChangeBatch batch = ChangeBatch.deferred();
 		for (OWLOntologyChange change : changes) {
+			if (batch.isBarrier(change)) {
+				batch.apply();
+			}
 			if (change.isAxiomChange()) { 
 				if (change.isAddAxiom()) { // change is AddAxiom
-					changesApplied.addAll(ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(change, annotation));
+					changesApplied.addAll(ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(change, annotation, batch));
 				} else { // change is RemoveAxiom
-					changesApplied.addAll(ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(change, annotation));
+					changesApplied.addAll(ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(change, annotation, batch));
 				}
 			} else { // change is something else, e.g. Import change
-				ChangeApplied chgApplied = change.getOntology().getOWLOntologyManager().applyChange(change);
-				if (chgApplied.equals(ChangeApplied.SUCCESSFULLY)) {
-					changesApplied.add(change);
-				}
+				changesApplied.addAll(ChangeBatch.applyLocked(Collections.singletonList(change)));
 			}
 		}
+		batch.apply();
 		return changesApplied;
 	}
 
 
+	/**
+	 * groups the positions of these changes by the ontology they are applied to
+	 * 
+	 * @param changes
+	 * 			changes to be applied
+	 * @return positions of the changes of each ontology in ascending order, 
+	 * 			or null if the ontologies cannot be changed independently 
+	 * 			(changes of imports or of annotation property hierarchies affect other ontologies)
+	 */
+	private static Map<OWLOntology, List<Integer>> partitionByOntology(List<OWLOntologyChange> changes) {
+		Map<OWLOntology, List<Integer>> positionsByOntology = new IdentityHashMap<OWLOntology, List<Integer>>();
+		for (int i = 0; i < changes.size(); i++) {
+			OWLOntologyChange change = changes.get(i);
+			if (!change.isAxiomChange() || change.getAxiom().isOfType(AxiomType.SUB_ANNOTATION_PROPERTY_OF)) {
+				return null;
+			}
+			List<Integer> positions = positionsByOntology.get(change.getOntology());
+			if (positions == null) {
+				positions = new ArrayList<Integer>();
+				positionsByOntology.put(change.getOntology(), positions);
+			}
+			positions.add(i);
+		}
+		return positionsByOntology;
+	}
+	
+	/**
+	 * handles the axiom changes of each ontology in its own task, 
+	 * and merges the changes applied successfully in the original order. 
+	 * If a task fails, all tasks are still waited for, and the changes applied by the other tasks are reverted, 
+	 * so as with a single batch, none of the changes are applied. 
+	 * The first failure is thrown, with later failures and a failure of reverting (see revertChanges()) 
+	 * added as suppressed exceptions.
+	 * 
+	 * @param changes
+	 * 			axiom changes to be applied
+	 * @param positionsByOntology
+	 * 			positions of the changes of each ontology
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @return list of changes applied successfully (considering successful updating of aspect annotations)
+	 */
+	private static List<OWLOntologyChange> handleChangesInParallel(List<OWLOntologyChange> changes, 
+			Map<OWLOntology, List<Integer>> positionsByOntology, Annotation annotation) {
+		List<List<OWLOntologyChange>> changesAppliedByPosition = 
+				new ArrayList<List<OWLOntologyChange>>(Collections.nCopies(changes.size(), (List<OWLOntologyChange>) null));
+		// listeners must not be registered while changes are broadcast concurrently, 
+		// so all of them are registered and the indexes used below are built here
+		ManagerListeners.registerAll(changes.get(0).getOntology().getOWLOntologyManager());
+		for (OWLOntology onto : positionsByOntology.keySet()) {
+			AspectIndex.get(onto);
+			AxiomKeyIndex.get(onto);
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		// changes applied by the manager for each task, to be reverted if another task fails
+		List<List<OWLOntologyChange>> appliedByTask = new ArrayList<List<OWLOntologyChange>>();
+		for (List<Integer> positions : positionsByOntology.values()) {
+			List<OWLOntologyChange> applied = new ArrayList<OWLOntologyChange>();
+			appliedByTask.add(applied);
+			tasks.add(pool.submit(() -> {
+				ChangeBatch batch = ChangeBatch.deferred();
+				try {
+					for (int i : positions) {
+						OWLOntologyChange change = changes.get(i);
+						if (change.isAddAxiom()) {
+							changesAppliedByPosition.set(i, ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(change, annotation, batch));
+						} else {
+							changesAppliedByPosition.set(i, ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(change, annotation, batch));
+						}
+					}
+					applied.addAll(batch.apply());
+				} catch (RuntimeException e) {
+					applied.addAll(batch.discard());
+					throw e;
+				}
+			}));
+		}
+		RuntimeException failure = null;
+		for (ForkJoinTask<?> task : tasks) {
+			try {
+				task.join();
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			List<OWLOntologyChange> applied = new ArrayList<OWLOntologyChange>();
+			for (List<OWLOntologyChange> taskApplied : appliedByTask) {
+				applied.addAll(taskApplied);
+			}
+			try {
+				revertChanges(applied);
+			} catch (RuntimeException revertFailure) {
+				failure.addSuppressed(revertFailure);
+			}
+			throw failure;
+		}
+		List<OWLOntologyChange> changesApplied = new ArrayList<OWLOntologyChange>();
+		for (List<OWLOntologyChange> positionChangesApplied : changesAppliedByPosition) {
+			changesApplied.addAll(positionChangesApplied);
+		}
+		return changesApplied;
+	}
+
 	/**
 	 * handles addition or removal of these axioms,
-	 * depending on the value of parameter isAddAxiom
+	 * depending on the value of parameter isAddAxiom. 
+	 * The resulting axiom changes are applied with a single applyChanges() call.
 	 * 
 	 * @param ontology
 	 * 			ontology 
@@ -103,20 +254,176 @@ public class ModificationHelper extends BasicHelper {
 	 * @return list of changes applied successfully (considering successful updating of aspect annotations)
 	 */
 	public static List<OWLOntologyChange> handleAddOrRemoveAxs(OWLOntology ontology, Set<OWLAxiom> axioms, Annotation annotation, boolean isAddAxioms) {
+		List<Lock> locks = AxiomLocks.lockAxioms(axioms);
+		try {
+			return handleAddOrRemoveAxsLocked(ontology, axioms, annotation, isAddAxioms);
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * see handleAddOrRemoveAxs(), called holding the locks of the axioms
+	 */
+	private static List<OWLOntologyChange> handleAddOrRemoveAxsLocked(OWLOntology ontology, Set<OWLAxiom> axioms, Annotation annotation, boolean isAddAxioms) {
 		List<OWLOntologyChange> changesApplied = new ArrayList<OWLOntologyChange>();
+		ChangeBatch batch = ChangeBatch.deferred();
 		if (isAddAxioms) {		
 			for (OWLAxiom axiom : axioms) {
-				changesApplied.addAll(ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(new AddAxiom(ontology, axiom), annotation));
+				if (batch.isBarrier(new AddAxiom(ontology, axiom))) {
+					batch.apply();
+				}
+				changesApplied.addAll(ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(new AddAxiom(ontology, axiom), annotation, batch));
 			}	
 		} else {		
 			for (OWLAxiom axiom : axioms) {
-//				changesApplied.addAll(ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(new RemoveAxiom(ontology, axiom), annotation));
-				changesApplied.addAll(ModificationHelperRemove.handleRemoveAxiomReturnChanges(axiom, ontology, annotation));
+				if (batch.isBarrier(new RemoveAxiom(ontology, axiom))) {
+					batch.apply();
+				}
+				changesApplied.addAll(ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(new RemoveAxiom(ontology, axiom), annotation, batch));
 			}
 		}
+		batch.apply();
 		return changesApplied;
 	}
 
+	/**
+	 * applies these axiom changes as a transaction, each considering its own aspects. 
+	 * Before an axiom is removed, it is checked that the ontology (including preceding changes of the transaction) 
+	 * contains it with these aspects. If a check fails, changes applied so far are reverted, 
+	 * so either all changes or none of them are applied. 
+	 * If reverting fails as well (see revertChanges()), the changes applied so far are kept, 
+	 * and the exception of reverting is added to the thrown exception as suppressed exception. 
+	 * Either way, the changes are removed from the undo log again.
+	 * 
+	 * @param changes
+	 * 			axiom changes of ontologies of one manager
+	 * @param annotations
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying the aspects of each change
+	 * @param undoLog
+	 * 			list the changes applied to the ontologies are appended to, in order (see revertChanges())
+	 * @return list of changes applied successfully (considering successful updating of aspect annotations)
+	 * @throws IllegalStateException
+	 * 			if an axiom to be removed is not associated with the aspects of its change
+	 */
+	public static List<OWLOntologyChange> handleTransaction(List<OWLOntologyChange> changes, List<Annotation> annotations, 
+			List<OWLOntologyChange> undoLog) {
+		List<OWLOntologyChange> changesApplied = new ArrayList<OWLOntologyChange>();
+		ChangeBatch batch = ChangeBatch.deferred();
+		int logged = undoLog.size();
+		List<Lock> locks = AxiomLocks.lockAxioms(getAxioms(changes));
+		try {
+			for (int i = 0; i < changes.size(); i++) {
+				OWLOntologyChange change = changes.get(i);
+				if (batch.isBarrier(change)) {
+					undoLog.addAll(batch.apply());
+				}
+				if (change.isAddAxiom()) {
+					changesApplied.addAll(ModificationHelperAdd.handleChangeAddAxiomReturnListOfChanges(change, annotations.get(i), batch));
+				} else {
+					if (!batch.containsSimilar(change.getAxiom(), change.getOntology(), getPredicate(change.getOntology(), annotations.get(i)))) {
+						throw new IllegalStateException("Axiom is not associated with the aspects to be removed: " + change.getAxiom());
+					}
+					changesApplied.addAll(ModificationHelperRemove.handleChangeRemoveAxiomReturnListOfChanges(change, annotations.get(i), batch));
+				}
+			}
+			undoLog.addAll(batch.apply());
+		} catch (RuntimeException e) {
+			undoLog.addAll(batch.discard());
+			List<OWLOntologyChange> applied = undoLog.subList(logged, undoLog.size());
+			try {
+				revertChanges(applied);
+			} catch (RuntimeException revertFailure) {
+				e.addSuppressed(revertFailure);
+			} finally {
+				applied.clear();
+			}
+			throw e;
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+		return changesApplied;
+	}
+	
+	/**
+	 * reverts these axiom changes with a single applyChanges() call. 
+	 * Holding the locks of the axioms and ontologies, it is checked first that the ontologies are still 
+	 * in the state the changes left them in, i.e. each inverse change would actually be applied 
+	 * (an added axiom is still contained, a removed axiom is still missing). 
+	 * Otherwise the changes were overwritten by later writers and the ontologies are left unchanged.
+	 * 
+	 * @param changes
+	 * 			axiom changes of ontologies of one manager, in the order they were applied
+	 * @throws IllegalStateException
+	 * 			if an axiom has been added or removed again since these changes were applied
+	 */
+	public static void revertChanges(List<OWLOntologyChange> changes) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		List<OWLOntologyChange> reverseChanges = new ArrayList<OWLOntologyChange>(changes.size());
+		for (int i = changes.size() - 1; i >= 0; i--) {
+			OWLOntologyChange change = changes.get(i);
+			if (change.isAddAxiom()) {
+				reverseChanges.add(new RemoveAxiom(change.getOntology(), change.getAxiom()));
+			} else {
+				reverseChanges.add(new AddAxiom(change.getOntology(), change.getAxiom()));
+			}
+		}
+		List<Lock> axiomLocks = AxiomLocks.lockAxioms(getAxioms(changes));
+		List<Lock> ontologyLocks = AxiomLocks.lockChangedOntologies(reverseChanges);
+		try {
+			checkApplicable(reverseChanges);
+			ChangeBatch.applyLocked(reverseChanges);
+		} finally {
+			AxiomLocks.unlock(ontologyLocks);
+			AxiomLocks.unlock(axiomLocks);
+		}
+	}
+	
+	/**
+	 * checks that each of these axiom changes would be applied, given the preceding ones
+	 * 
+	 * @param changes
+	 * 			axiom changes of ontologies of one manager
+	 * @throws IllegalStateException
+	 * 			if a change would add a contained axiom or remove a missing one
+	 */
+	private static void checkApplicable(List<OWLOntologyChange> changes) {
+		// whether the preceding changes leave an axiom in an ontology
+		Map<OWLOntology, Map<OWLAxiom, Boolean>> contained = new IdentityHashMap<OWLOntology, Map<OWLAxiom, Boolean>>();
+		for (OWLOntologyChange change : changes) {
+			Map<OWLAxiom, Boolean> ontoContained = contained.get(change.getOntology());
+			if (ontoContained == null) {
+				ontoContained = new HashMap<OWLAxiom, Boolean>();
+				contained.put(change.getOntology(), ontoContained);
+			}
+			Boolean isContained = ontoContained.get(change.getAxiom());
+			if (isContained == null) {
+				isContained = change.getOntology().containsAxiom(change.getAxiom());
+			}
+			if (isContained == change.isAddAxiom()) {
+				throw new IllegalStateException("Ontology has been changed since, cannot apply " + change);
+			}
+			ontoContained.put(change.getAxiom(), change.isAddAxiom());
+		}
+	}
+	
+	/**
+	 * @param changes
+	 * 			ontology changes
+	 * @return axioms of the axiom changes
+	 */
+	private static List<OWLAxiom> getAxioms(List<OWLOntologyChange> changes) {
+		List<OWLAxiom> axioms = new ArrayList<OWLAxiom>(changes.size());
+		for (OWLOntologyChange change : changes) {
+			if (change.isAxiomChange()) {
+				axioms.add(change.getAxiom());
+			}
+		}
+		return axioms;
+	}
+
 	
 	// ----------------- HELPERS ------------------------------
 		
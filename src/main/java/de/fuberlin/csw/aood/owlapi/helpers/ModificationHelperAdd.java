@@ -19,20 +19,22 @@ package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.semanticweb.owlapi.model.AddAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLAxiom;
-import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyChange;
-import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.parameters.ChangeApplied;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomLocks;
 
 /**
  * This helper provides methods to handle axiom additions considering current aspects
@@ -49,11 +51,16 @@ public class ModificationHelperAdd extends ModificationHelper {
 	 * @return status whether this change has been applied successfully (aspect annotations updated)
 	 */
 	public static ChangeApplied handleChangeAddAxiom(OWLOntologyChange change, Annotation annotation) {
-		String[] currentAspects = getCurrentAspectsAdd(annotation);	
-		ChangeApplied result = handleAddAxiom(change.getAxiom(), change.getOntology(), currentAspects);//handleChangeAdd(change, currentAspects);
+		// we dont care about the distinction between AND and OR in this case: all aspects are added
+		AspectPredicate predicate = getPredicate(change.getOntology(), annotation);
+		List<Lock> locks = AxiomLocks.lockAxioms(Collections.singleton(change.getAxiom()));
+		try {
+			return handleAddAxiom(change.getAxiom(), change.getOntology(), predicate, ChangeBatch.immediate());//handleChangeAdd(change, currentAspects);
 //	we have decided not to do this step
-//		ModificationHelperPostprocess.postprocessChange(currentAspects, change);
-		return result;
+//			ModificationHelperPostprocess.postprocessChange(currentAspects, change);
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
 	}
 
 	/**
@@ -69,6 +76,25 @@ public class ModificationHelperAdd extends ModificationHelper {
 		ChangeApplied chgApplied = handleChangeAddAxiom(change, annotation);
 		return produceListOfChangesFromChangeApplied(change.getOntology(), change.getAxiom(), chgApplied);
 	}
+	
+	/**
+	 * handle ontology change of type AddAxiom (update current aspect annotations), 
+	 * recording the resulting changes in this batch
+	 * 
+	 * @param change
+	 * 			change of type AddAxiom
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @param batch
+	 * 			batch the resulting changes are recorded in
+	 * @return list of successfully applied ontology changes (if aspect annotations were updated successfully)
+	 */
+	static List<OWLOntologyChange> handleChangeAddAxiomReturnListOfChanges(OWLOntologyChange change, 
+			Annotation annotation, ChangeBatch batch) {
+		AspectPredicate predicate = getPredicate(change.getOntology(), annotation);
+		ChangeApplied chgApplied = handleAddAxiom(change.getAxiom(), change.getOntology(), predicate, batch);
+		return produceListOfChangesFromChangeApplied(change.getOntology(), change.getAxiom(), chgApplied);
+	}
 
 	/**
 	 * handle axiom addition (update current aspects)
@@ -77,59 +103,34 @@ public class ModificationHelperAdd extends ModificationHelper {
 	 * 			axiom which user has asked to add
 	 * @param onto
 	 * 			current ontology
-	 * @param currentAspects
-	 * 			aspect IRIs provided as String array
+	 * @param predicate
+	 * 			compiled aspect predicate specifying current aspects
+	 * @param batch
+	 * 			batch the changes are done in
 	 * @return status whether the change was applied successfully 
 	 * 			(if aspect annotations were updated successfully)
 	 */
-	private static ChangeApplied handleAddAxiom(OWLAxiom userAx, OWLOntology onto, String[] currentAspects) {
+	private static ChangeApplied handleAddAxiom(OWLAxiom userAx, OWLOntology onto, AspectPredicate predicate, 
+			ChangeBatch batch) {
 		// TRICKY ALGORITHM
 		// Check all axioms for which is true:
 		// set (real annos) = all annos on this ax which are not aspects
 		// if anno (set of real annos) equals axiom user asked for : add aspects
 		// else add new axiom with aspects
 		ChangeApplied chgApplied = ChangeApplied.UNSUCCESSFULLY;	
-		OWLOntologyManager om = onto.getOWLOntologyManager();
-		OWLDataFactory df = om.getOWLDataFactory();
-		for (OWLAxiom similarAxiom : onto.getAxiomsIgnoreAnnotations(userAx)) {
-			Set<OWLAnnotation> regularAnnotationsOnSimilarAxiom = findRegularAnnotations(df, similarAxiom.getAnnotations());
-			Set<OWLAnnotation> regularAnnotationsOnUserAxiom = findRegularAnnotations(df, userAx.getAnnotations());
-			if (regularAnnotationsOnSimilarAxiom.equals(regularAnnotationsOnUserAxiom)) {
-				// add all the current aspects to this whole axiom now, 
-				// regardless of which aspects it already has
-				Set<OWLAnnotation> currentAspectAnnotations = createSetOfRelevantAnnotations(onto, currentAspects);
-				OWLAxiom axiomToStay = similarAxiom.getAnnotatedAxiom(currentAspectAnnotations);
-				om.removeAxiom(onto, similarAxiom);
-				chgApplied = om.addAxiom(onto, axiomToStay);
-			}				
+		Set<OWLAnnotation> currentAspectAnnotations = predicate.getAllAnnotations();
+		for (OWLAxiom similarAxiom : batch.getSimilarAxioms(userAx, onto)) {
+			// add all the current aspects to this whole axiom now, 
+			// regardless of which aspects it already has
+			OWLAxiom axiomToStay = similarAxiom.getAnnotatedAxiom(currentAspectAnnotations);
+			chgApplied = batch.replaceAxiom(onto, similarAxiom, axiomToStay);
 		}
 		if (chgApplied.equals(ChangeApplied.UNSUCCESSFULLY)) {
-			om.addAxiom(onto, associateAxiomWithAspects(onto, userAx, currentAspects));
+			batch.addAxiom(onto, userAx.getAnnotatedAxiom(currentAspectAnnotations));
 		}
 		return chgApplied;
 	}
 	
-	/**
-	 * combine all aspects specified in this annotation in one String array 
-	 * since we dont care about the distinction between AND and OR in this case
-	 * 
-	 * @param annotation
-	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
-	 * @return String array of aspect IRIs (logically conjunct)
-	 */
-	private static String[] getCurrentAspectsAdd(Annotation annotation) {
-		String[] currentAspects = new String[0];	
-		if (annotation instanceof OWLAspectAnd) { // OWLAspectAnd
-			currentAspects = ((OWLAspectAnd) annotation).value();			
-		} else { // OWLAspectOr
-			for (OWLAspectAnd aspectListAnd : ((OWLAspectOr) annotation).value()) {
-				String[] someOfCurrentAspects = aspectListAnd.value();		
-				currentAspects = concatenateTwoStringArrays(currentAspects, someOfCurrentAspects);		
-			}
-		}
-		return currentAspects;
-	}
-	
 	/**
 	 * checks if argument chgApplied equals SUCCESSFULLY, 
 	 * and if yes create list of changes of type AddAxiom from this axiom
@@ -19,20 +19,25 @@ package de.fuberlin.csw.aood.owlapi.helpers;
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyChange;
-import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.RemoveAxiom;
 import org.semanticweb.owlapi.model.parameters.ChangeApplied;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomLocks;
 
 /**
  * This helper provides methods to handle axiom removals considering current aspects
@@ -50,7 +55,29 @@ public class ModificationHelperRemove extends ModificationHelper {
 	 * @return List of changes (this change) if aspect annotations were updated
 	 */
 	public static List<OWLOntologyChange> handleChangeRemoveAxiomReturnListOfChanges(OWLOntologyChange change, Annotation annotation) {
-		ChangeApplied chgApplied = handleChangeRemoveAxiom(change, annotation);
+		List<Lock> locks = AxiomLocks.lockAxioms(Collections.singleton(change.getAxiom()));
+		try {
+			return handleChangeRemoveAxiomReturnListOfChanges(change, annotation, ChangeBatch.immediate());
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * handles change of type RemoveAxiom which was asked to be applied under current aspects, 
+	 * recording the resulting changes in this batch
+	 * 
+	 * @param change
+	 * 			change of type RemoveAxiom
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @param batch
+	 * 			batch the resulting changes are recorded in
+	 * @return List of changes (this change) if aspect annotations were updated
+	 */
+	static List<OWLOntologyChange> handleChangeRemoveAxiomReturnListOfChanges(OWLOntologyChange change, 
+			Annotation annotation, ChangeBatch batch) {
+		ChangeApplied chgApplied = handleChangeRemoveAxiom(change, annotation, batch);
 		return produceListOfChangesFromChangeApplied(change.getOntology(), change.getAxiom(), chgApplied);
 	}
 	
@@ -68,8 +95,7 @@ public class ModificationHelperRemove extends ModificationHelper {
 	 */
 	public static List<OWLOntologyChange> handleRemoveAxiomReturnChanges(
 			OWLAxiom axiom, OWLOntology ontology, Annotation annotation) {	
-		ChangeApplied chgApplied = handleChangeRemoveAxiom(new RemoveAxiom(ontology, axiom), annotation);
-		return produceListOfChangesFromChangeApplied(ontology, axiom, chgApplied);
+		return handleChangeRemoveAxiomReturnListOfChanges(new RemoveAxiom(ontology, axiom), annotation);
 	}
 	
 	/**
@@ -82,29 +108,51 @@ public class ModificationHelperRemove extends ModificationHelper {
 	 * @return ChangeApplied: status if aspects updated successfully
 	 */
 	public static ChangeApplied handleChangeRemoveAxiom(OWLOntologyChange change, Annotation annotation) {
+		List<Lock> locks = AxiomLocks.lockAxioms(Collections.singleton(change.getAxiom()));
+		try {
+			return handleChangeRemoveAxiom(change, annotation, ChangeBatch.immediate());
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * handle axiom asked to be removed under current aspects, doing the changes in this batch
+	 * 
+	 * @param change
+	 * 			change of type RemoveAxioms
+	 * @param annotation
+	 * 			Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr} specifying current aspects
+	 * @param batch
+	 * 			batch the changes are done in
+	 * @return ChangeApplied: status if aspects updated successfully
+	 */
+	private static ChangeApplied handleChangeRemoveAxiom(OWLOntologyChange change, Annotation annotation, 
+			ChangeBatch batch) {
 		ChangeApplied result = ChangeApplied.UNSUCCESSFULLY;
 		OWLOntology onto = change.getOntology();
 		OWLAxiom userAx = change.getAxiom();
+		AspectPredicate predicate = getPredicate(onto, annotation);
 		if (annotation instanceof OWLAspectAnd) { // OWLAspectAnd
-			String[] currentAspects = ((OWLAspectAnd) annotation).value();
-			result = handleRemoveAxiom(userAx, onto, currentAspects);
+			result = handleRemoveAxiom(userAx, onto, predicate, batch);
 			// 	not using it anymore, deprecated
 			//	ModificationHelperPostprocess.postprocessChange(currentAspects, change);
 			return result;		
 		} else { // OWLAspectOr				
-			for (OWLAxiom similarAxiom : getSimilarAxioms(userAx, onto)) {
+			AspectIndex index = AspectIndex.get(onto);
+			for (OWLAxiom similarAxiom : batch.getSimilarAxioms(userAx, onto)) {
 				// for every And-List check first if Axiom has all aspects in this list
 				// If yes add those aspects to a helper list
 				// After all And-Lists have been checked, disassociate this axiom from the aspects in the helper list.
 				// (if those are the last aspects in this axiom, then the axiom just stays aspectless)	
-				String[] aspectsToRemove = new String[0];
-				for (OWLAspectAnd aspectListAnd : ((OWLAspectOr) annotation).value()) {
-					String[] someOfCurrentAspects = aspectListAnd.value();
-					if (hasAllAspects(similarAxiom, onto, someOfCurrentAspects)) {
-						aspectsToRemove = concatenateTwoStringArrays(aspectsToRemove, someOfCurrentAspects);
+				long[] bits = index.getBits(similarAxiom);
+				Set<OWLAnnotation> aspectsToRemove = new HashSet<OWLAnnotation>();
+				for (int i = 0; i < predicate.getConjunctCount(); i++) {
+					if (predicate.testConjunct(bits, i)) {
+						aspectsToRemove.addAll(predicate.getAnnotations(i));
 					}
 				}
-				result = disassociateAxiomFromCurrentAspects(similarAxiom, onto, aspectsToRemove);
+				result = disassociateAxiomFromCurrentAspects(similarAxiom, onto, aspectsToRemove, batch);
 				// Deprecated method, not using it anymore
 				// ModificationHelperPostprocess.postprocessAddOrRemoveAxiom(onto, userAx, currentAspects, false);
 			}			
@@ -120,20 +168,24 @@ public class ModificationHelperRemove extends ModificationHelper {
 	 * 			axiom which user asked to remove
 	 * @param onto
 	 * 			current ontology
-	 * @param currentAspects
-	 * 			current aspects
+	 * @param predicate
+	 * 			compiled predicate of current aspects (a single conjunction)
+	 * @param batch
+	 * 			batch the changes are done in
 	 * @return status of type ChangeApplied: 
 	 * 			successfully, if aspect annotations were removed,
 	 * 			unsuccessfully otherwise
 	 */
-	private static ChangeApplied handleRemoveAxiom(OWLAxiom userAx, OWLOntology onto, String[] currentAspects) {
+	private static ChangeApplied handleRemoveAxiom(OWLAxiom userAx, OWLOntology onto, AspectPredicate predicate, 
+			ChangeBatch batch) {
 		// search for similar axioms (differing only in aspect annotations)
 		// and delete aspects from such axioms
 		// otherwise let it be. (return unsuccessfully)
 		ChangeApplied chgApplied = ChangeApplied.UNSUCCESSFULLY;	
-		for (OWLAxiom similarAxiom : getSimilarAxioms(userAx, onto)) {
-			if (hasAllAspects(similarAxiom, onto, currentAspects)) {
-				chgApplied = disassociateAxiomFromCurrentAspects(similarAxiom, onto, currentAspects);
+		AspectIndex index = AspectIndex.get(onto);
+		for (OWLAxiom similarAxiom : batch.getSimilarAxioms(userAx, onto)) {
+			if (predicate.testConjunct(index.getBits(similarAxiom), 0)) {
+				chgApplied = disassociateAxiomFromCurrentAspects(similarAxiom, onto, predicate.getAnnotations(0), batch);
 			}
 		}			
 		return chgApplied;
@@ -147,31 +199,36 @@ public class ModificationHelperRemove extends ModificationHelper {
 	 * 			axiom which maybe has some current aspects
 	 * @param onto
 	 * 			current ontology
-	 * @param currentAspects
-	 * 			current aspects
+	 * @param relevantAspectAnnotations
+	 * 			annotations of current aspects
+	 * @param batch
+	 * 			batch the changes are done in
 	 * @return status of type ChangeApplied: 
 	 * 			successfully, if aspect annotations have been updated,
 	 * 			unsuccessfully otherwise
 	 */
-	private static ChangeApplied disassociateAxiomFromCurrentAspects(OWLAxiom axiom, OWLOntology onto, String[] currentAspects) {
-		ChangeApplied chgApplied;
-		OWLOntologyManager om = onto.getOWLOntologyManager();
-		Set<OWLAnnotation> relevantAspectAnnotations = createSetOfRelevantAnnotations(onto, currentAspects);
+	private static ChangeApplied disassociateAxiomFromCurrentAspects(OWLAxiom axiom, OWLOntology onto, 
+			Set<OWLAnnotation> relevantAspectAnnotations, ChangeBatch batch) {
+		AspectIndex index = AspectIndex.get(onto);
 		OWLAxiom axBase = axiom.getAxiomWithoutAnnotations();
+		// aspects may also be attached via sub-properties of isPointcutOf, so we compare the values
+		Set<OWLAnnotationValue> relevantAspects = new HashSet<OWLAnnotationValue>();
+		for (OWLAnnotation anno : relevantAspectAnnotations) {
+			relevantAspects.add(anno.getValue());
+		}
 		// delete relevant aspect annotations from similarAxiom: (3 steps)
 		// 1. find all annotations which are not current aspects
 		Set<OWLAnnotation> annosToStay = new HashSet<OWLAnnotation>();
 		for (OWLAnnotation anno : axiom.getAnnotations()) {
-			if (!relevantAspectAnnotations.contains(anno)) {
+			if (!(index.isAspectAnnotation(anno) && relevantAspects.contains(anno.getValue()))) {
 				annosToStay.add(anno);
 			}
 		}
 		// 2. add those annotations which are not current aspects to axToStay
 		OWLAxiom axiomToStay = axBase.getAnnotatedAxiom(annosToStay);
-		// 3. replace axiom with axiomToStay
-		chgApplied = om.applyChange(new RemoveAxiom(onto, axiom));
-		om.addAxiom(onto, axiomToStay);
-		return chgApplied;
+		// 3. replace axiom with axiomToStay (axiom was found in onto, so removing it always succeeds)
+		batch.replaceAxiom(onto, axiom, axiomToStay);
+		return ChangeApplied.SUCCESSFULLY;
 	}
 	
 	/**
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.OWLAnonymousIndividual;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Per-ontology reverse index from anonymous individuals 
+ * to the aspect signature classes (see {@link AspectClasses}) of the axioms referencing them.
+ * 
+ * <p>The index is built on first use and kept up to date by a change listener 
+ * registered on the manager of the ontology. It is rebuilt together with the aspect index.
+ */
+public final class AnonymousIndividualIndex {
+	
+	/** indexes of ontologies (weak, identity based keys) */
+	private static final Map<OWLOntology, AnonymousIndividualIndex> indexes = new MapMaker().weakKeys().makeMap();
+	
+	/** keeps all indexes in sync with changes of their ontologies */
+	private static final OWLOntologyChangeListener maintainer = new IndexMaintainer();
+	
+	/** aspect index the classes of axioms are taken from */
+	private final AspectIndex index;
+	/** anonymous individuals mapped to the sorted classes of their referencing axioms (one entry per axiom) */
+	private final Map<OWLAnonymousIndividual, int[]> referencingClasses = new HashMap<OWLAnonymousIndividual, int[]>();
+	
+	private AnonymousIndividualIndex(OWLOntology onto, AspectIndex index) {
+		this.index = index;
+		for (OWLAxiom ax : onto.getAxioms()) {
+			add(ax);
+		}
+	}
+	
+	/**
+	 * gets the anonymous individual index of this ontology, building it if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return anonymous individual index of this ontology
+	 */
+	public static AnonymousIndividualIndex get(OWLOntology onto) {
+		AspectIndex index = AspectIndex.get(onto);
+		AnonymousIndividualIndex anIndex = indexes.get(onto);
+		// the classes of axioms change if the aspect index is rebuilt
+		if (anIndex == null || anIndex.index != index) {
+			ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+			anIndex = new AnonymousIndividualIndex(onto, index);
+			indexes.put(onto, anIndex);
+		}
+		return anIndex;
+	}
+	
+	/**
+	 * registers the listener keeping the anonymous individual indexes up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * checks if an axiom of the ontology referencing this anonymous individual satisfies this predicate
+	 * 
+	 * @param anInd
+	 * 			anonymous individual
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if there is a referencing axiom with these aspects, 
+	 * 			false otherwise
+	 */
+	public synchronized boolean isReferencedWith(OWLAnonymousIndividual anInd, AspectPredicate predicate) {
+		return ClassMultisets.anySatisfies(referencingClasses.get(anInd), predicate);
+	}
+	
+	private synchronized void add(OWLAxiom ax) {
+		int classId = -1;
+		for (OWLAnonymousIndividual anInd : ax.getAnonymousIndividuals()) {
+			if (classId < 0) {
+				classId = index.getClassId(ax);
+			}
+			referencingClasses.put(anInd, ClassMultisets.add(referencingClasses.get(anInd), classId));
+		}
+	}
+	
+	private synchronized void remove(OWLAxiom ax) {
+		int classId = -1;
+		for (OWLAnonymousIndividual anInd : ax.getAnonymousIndividuals()) {
+			if (classId < 0) {
+				classId = index.getClassId(ax);
+			}
+			int[] classIds = ClassMultisets.remove(referencingClasses.get(anInd), classId);
+			if (classIds == null) {
+				referencingClasses.remove(anInd);
+			} else {
+				referencingClasses.put(anInd, classIds);
+			}
+		}
+	}
+	
+	/**
+	 * updates the indexes of changed ontologies
+	 */
+	private static class IndexMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				AnonymousIndividualIndex anIndex = indexes.get(change.getOntology());
+				if (anIndex != null && change.isAxiomChange()) {
+					if (change.isAddAxiom()) {
+						anIndex.add(change.getAxiom());
+					} else {
+						anIndex.remove(change.getAxiom());
+					}
+				}
+			}
+		}
+	}
+
+}
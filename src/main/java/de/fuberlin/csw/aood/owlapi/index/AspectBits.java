@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * Assigns an integer id to every aspect IRI 
+ * and provides operations on aspect bitsets (one bit per aspect id, stored in words of type long).
+ * 
+ * <p>Ids are shared by all ontologies, so bitsets (and masks) of different ontologies can be combined.
+ */
+public final class AspectBits {
+	
+	/** empty bitset: no aspects */
+	public static final long[] EMPTY = new long[0];
+	
+	private static final ConcurrentMap<IRI, Integer> ids = new ConcurrentHashMap<IRI, Integer>();
+	private static final AtomicInteger nextId = new AtomicInteger();
+	
+	private AspectBits() {
+	}
+	
+	/**
+	 * gets the id of this aspect IRI, assigning a new one if this IRI has not been seen before
+	 * 
+	 * @param aspectIRI
+	 * 			IRI of an aspect
+	 * @return id of this aspect
+	 */
+	public static int idOf(IRI aspectIRI) {
+		Integer id = ids.get(aspectIRI);
+		if (id == null) {
+			id = ids.computeIfAbsent(aspectIRI, iri -> nextId.getAndIncrement());
+		}
+		return id;
+	}
+	
+	/**
+	 * creates a mask with the bits of these aspects set
+	 * 
+	 * @param aspectIRIs
+	 * 			IRIs of aspects (provided as String array)
+	 * @return bitset of these aspects
+	 */
+	public static long[] mask(String[] aspectIRIs) {
+		long[] mask = EMPTY;
+		for (String aspectIRI : aspectIRIs) {
+			mask = set(mask, idOf(IRI.create(aspectIRI)));
+		}
+		return mask;
+	}
+	
+	/**
+	 * creates one mask per conjunction of aspects
+	 * 
+	 * @param aspects
+	 * 			array of string arrays, where 
+	 * 			the outer array represents logical disjunction (OR),  
+	 * 			and the inner array represents logical conjunction (AND)
+	 * @return masks combined with logical disjunction
+	 */
+	public static long[][] masks(String[][] aspects) {
+		long[][] masks = new long[aspects.length][];
+		for (int i = 0; i < aspects.length; i++) {
+			masks[i] = mask(aspects[i]);
+		}
+		return masks;
+	}
+	
+	/**
+	 * sets this bit, growing the bitset if needed
+	 * 
+	 * @param bits
+	 * 			bitset (not modified)
+	 * @param id
+	 * 			aspect id
+	 * @return bitset with this bit set
+	 */
+	public static long[] set(long[] bits, int id) {
+		int word = id >>> 6;
+		long[] result = Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+		result[word] |= 1L << id;
+		return result;
+	}
+	
+	/**
+	 * checks if all bits of this mask are set in this bitset 
+	 * 
+	 * @param bits
+	 * 			bitset of an axiom
+	 * @param mask
+	 * 			bitset of logically conjunct aspects
+	 * @return true, if every aspect of the mask is contained in bits
+	 */
+	public static boolean containsAll(long[] bits, long[] mask) {
+		for (int i = 0; i < mask.length; i++) {
+			long m = mask[i];
+			if (m != 0 && (i >= bits.length || (bits[i] & m) != m)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * checks if all bits of at least one of these masks are set in this bitset
+	 * 
+	 * @param bits
+	 * 			bitset of an axiom
+	 * @param masks
+	 * 			masks combined with logical disjunction
+	 * @return true, if bits contain one of the masks
+	 */
+	public static boolean containsAny(long[] bits, long[][] masks) {
+		for (long[] mask : masks) {
+			if (containsAll(bits, mask)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns aspect bitsets (see {@link AspectBits}) into aspect signature classes.
+ * 
+ * <p>Every distinct combination of aspects gets a small integer id, 
+ * so the result of an aspect expression can be computed once per class 
+ * (see {@link AspectPredicate#testClass(int)}) instead of once per axiom.
+ * Class 0 is the class of axioms without aspects.
+ */
+public final class AspectClasses {
+	
+	/** id of the class of axioms without aspects */
+	public static final int NO_ASPECTS = 0;
+	
+	private static final ConcurrentMap<Bits, Integer> ids = new ConcurrentHashMap<Bits, Integer>();
+	/** bitsets indexed by class id */
+	private static volatile long[][] bitsById = new long[16][];
+	private static int count;
+	
+	static {
+		intern(AspectBits.EMPTY);
+	}
+	
+	private AspectClasses() {
+	}
+	
+	/**
+	 * gets the id of the class of this aspect bitset, creating a new class if needed
+	 * 
+	 * @param bits
+	 * 			aspect bitset
+	 * @return class id
+	 */
+	public static int intern(long[] bits) {
+		Integer id = ids.get(new Bits(bits));
+		return (id != null) ? id : register(bits);
+	}
+	
+	private static synchronized int register(long[] bits) {
+		Bits key = new Bits(bits.clone());
+		Integer id = ids.get(key);
+		if (id == null) {
+			id = count++;
+			if (id == bitsById.length) {
+				bitsById = Arrays.copyOf(bitsById, id * 2);
+			}
+			bitsById[id] = key.bits;
+			ids.put(key, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * @param classId
+	 * 			class id
+	 * @return aspect bitset of this class (must not be modified)
+	 */
+	public static long[] bitsOf(int classId) {
+		return bitsById[classId];
+	}
+	
+	/**
+	 * key wrapper comparing bitsets by value
+	 */
+	private static final class Bits {
+		
+		private final long[] bits;
+		private final int hash;
+		
+		Bits(long[] bits) {
+			this.bits = bits;
+			this.hash = Arrays.hashCode(bits);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Bits && Arrays.equals(bits, ((Bits) obj).bits);
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.Config;
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+
+/**
+ * Per-ontology index of the aspect signature class of every axiom of the ontology 
+ * (see {@link AspectClasses} and {@link AspectBits}).
+ * 
+ * <p>The classes of the axioms of the ontology are held by its {@link AxiomKeyIndex}, 
+ * which stores every axiom together with its class, so they are kept in a single map per ontology. 
+ * get() builds the axiom key index on first use, and the key index keeps the classes up to date on changes. 
+ * Axioms which are not contained in the ontology (e.g. axioms from imports) 
+ * are looked up by inspecting their annotations.
+ * 
+ * <p>If configured (matchAspectSubProperties), annotations using a sub-property of isPointcutOf 
+ * (see {@link AspectProperties}) set the same bits as isPointcutOf itself. 
+ * A new index is created when the property hierarchy changes, and the axiom key index is rebuilt with it.
+ */
+public class AspectIndex {
+	
+	/** indexes of ontologies (weak, identity based keys) */
+	private static final ConcurrentMap<OWLOntology, AspectIndex> indexes = new MapMaker().weakKeys().makeMap();
+	
+	private static final boolean matchAspectSubProperties;
+	
+	static {
+		matchAspectSubProperties = (boolean)Config.instance().get("matchAspectSubProperties");
+	}
+	
+	/** annotation properties whose values are aspects */
+	private final Set<OWLAnnotationProperty> aspectProperties;
+	/** axiom key index holding the classes of the axioms of the ontology, once it has been built for this index */
+	private volatile AxiomKeyIndex keyIndex;
+	
+	private AspectIndex(Set<OWLAnnotationProperty> aspectProperties) {
+		this.aspectProperties = aspectProperties;
+	}
+	
+	/**
+	 * gets the aspect index of this ontology, building it and the axiom key index holding its classes if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return aspect index of this ontology
+	 */
+	public static AspectIndex get(OWLOntology onto) {
+		return AxiomKeyIndex.get(onto).getAspectIndex();
+	}
+	
+	/**
+	 * gets the aspect index for the current aspect properties of this ontology, creating it if needed, 
+	 * without building the axiom key index (see {@link AxiomKeyIndex#get})
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return aspect index of this ontology, which may not know the classes of the axioms of the ontology yet
+	 */
+	static AspectIndex getForProperties(OWLOntology onto) {
+		AspectIndex index = indexes.get(onto);
+		if (index == null || isOutdated(index, onto)) {
+			// published once, so the axiom key index is not rebuilt for an equal index
+			index = indexes.compute(onto, (o, old) -> 
+					(old == null || isOutdated(old, o)) ? new AspectIndex(getAspectProperties(o)) : old);
+		}
+		return index;
+	}
+	
+	/**
+	 * @return true, if the closure of aspect properties has changed since this index was built, so bits may have changed
+	 */
+	private static boolean isOutdated(AspectIndex index, OWLOntology onto) {
+		return matchAspectSubProperties && index.aspectProperties != AspectProperties.get(onto);
+	}
+	
+	/**
+	 * sets the axiom key index which holds the classes of the axioms of the ontology, computed by this index
+	 * 
+	 * @param keyIndex
+	 * 			axiom key index published for this index
+	 */
+	void setKeyIndex(AxiomKeyIndex keyIndex) {
+		this.keyIndex = keyIndex;
+	}
+	
+	/**
+	 * gets the annotation properties which are treated as aspect properties in this ontology
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return isPointcutOf, together with its sub-properties if matchAspectSubProperties is configured
+	 */
+	private static Set<OWLAnnotationProperty> getAspectProperties(OWLOntology onto) {
+		if (matchAspectSubProperties) {
+			return AspectProperties.get(onto);
+		}
+		return Collections.singleton(BasicHelper.getAspectProperty(onto.getOWLOntologyManager().getOWLDataFactory()));
+	}
+	
+	/**
+	 * @return annotation properties whose values are treated as aspects by this index (unmodifiable)
+	 */
+	public Set<OWLAnnotationProperty> getAspectProperties() {
+		return aspectProperties;
+	}
+	
+	/**
+	 * checks whether this annotation is an aspect annotation with respect to this index, 
+	 * i.e. an annotation with an aspect property and an IRI value
+	 * 
+	 * @param anno
+	 * 			annotation to be checked
+	 * @return true, if this annotation associates an axiom with an aspect
+	 */
+	public boolean isAspectAnnotation(OWLAnnotation anno) {
+		return isAspectAnnotation(anno, aspectProperties);
+	}
+	
+	/**
+	 * checks whether this annotation is an aspect annotation, 
+	 * i.e. an annotation with one of these aspect properties and an IRI value
+	 * 
+	 * @param anno
+	 * 			annotation to be checked
+	 * @param aspectProperties
+	 * 			annotation properties whose values are treated as aspects
+	 * @return true, if this annotation associates an axiom with an aspect
+	 */
+	public static boolean isAspectAnnotation(OWLAnnotation anno, Set<OWLAnnotationProperty> aspectProperties) {
+		// only plain annotations are equal to the ones created by createSetOfRelevantAnnotations()
+		return aspectProperties.contains(anno.getProperty()) 
+				&& anno.getValue() instanceof IRI && anno.getAnnotations().isEmpty();
+	}
+	
+	/**
+	 * gets the aspect signature class of this axiom
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return id of the class of aspects this axiom is annotated with
+	 */
+	public int getClassId(OWLAxiom ax) {
+		if (!ax.isAnnotated()) {
+			return AspectClasses.NO_ASPECTS;
+		}
+		AxiomKeyIndex keyIndex = this.keyIndex;
+		int classId = (keyIndex != null) ? keyIndex.getClassId(ax, this) : AxiomKeyIndex.UNKNOWN_CLASS;
+		return (classId != AxiomKeyIndex.UNKNOWN_CLASS) ? classId : computeClass(ax);
+	}
+	
+	/**
+	 * gets the aspect bitset of this axiom
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return bitset of aspects this axiom is annotated with (must not be modified)
+	 */
+	public long[] getBits(OWLAxiom ax) {
+		return AspectClasses.bitsOf(getClassId(ax));
+	}
+	
+	/**
+	 * checks if this axiom has all aspects of at least one of these masks
+	 * 
+	 * @param ax
+	 * 			axiom to be checked
+	 * @param masks
+	 * 			aspect masks combined with logical disjunction
+	 * @return true, if axiom has these aspects, 
+	 * 			false otherwise
+	 */
+	public boolean hasAspects(OWLAxiom ax, long[][] masks) {
+		return AspectBits.containsAny(getBits(ax), masks);
+	}
+	
+	/**
+	 * checks if this axiom satisfies this aspect predicate
+	 * 
+	 * @param ax
+	 * 			axiom to be checked
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if axiom has these aspects, 
+	 * 			false otherwise
+	 */
+	public boolean matches(OWLAxiom ax, AspectPredicate predicate) {
+		return predicate.testClass(getClassId(ax));
+	}
+	
+	/**
+	 * computes the aspect signature class of this axiom from its aspect annotations
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return id of the class of aspects this axiom is annotated with
+	 */
+	int computeClass(OWLAxiom ax) {
+		return ax.isAnnotated() ? AspectClasses.intern(computeBits(ax)) : AspectClasses.NO_ASPECTS;
+	}
+	
+	/**
+	 * computes the aspect bitset of this axiom from its aspect annotations
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return bitset of aspects this axiom is annotated with
+	 */
+	private long[] computeBits(OWLAxiom ax) {
+		long[] bits = AspectBits.EMPTY;
+		for (OWLAnnotation anno : ax.getAnnotations()) {
+			if (isAspectAnnotation(anno)) {
+				bits = AspectBits.set(bits, AspectBits.idOf((IRI) anno.getValue()));
+			}
+		}
+		return bits;
+	}
+
+}
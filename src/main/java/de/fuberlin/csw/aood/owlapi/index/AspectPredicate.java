@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.OWLAspectOr;
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+
+/**
+ * Compiled form of an aspect expression given as Annotation of type {@link OWLAspectAnd} or {@link OWLAspectOr}.
+ * 
+ * <p>A predicate holds one aspect mask (see {@link AspectBits}) per conjunction 
+ * together with the corresponding aspect annotations created by a specific data factory. 
+ * Predicates are immutable and cached per annotation and data factory, 
+ * so they are built only once for every distinct aspect expression.
+ */
+public final class AspectPredicate {
+	
+	/** compiled predicates per data factory (weak, identity based keys) and annotation */
+	private static final Map<OWLDataFactory, ConcurrentMap<Annotation, AspectPredicate>> cache = 
+			new MapMaker().weakKeys().makeMap();
+	/** compiled predicates per data factory (weak, identity based keys) and aspect IRIs */
+	private static final Map<OWLDataFactory, ConcurrentMap<AspectsKey, AspectPredicate>> aspectsCache = 
+			new MapMaker().weakKeys().makeMap();
+	
+	/** aspect IRIs: the outer array represents logical disjunction, the inner arrays logical conjunction */
+	private final String[][] aspects;
+	/** one mask per conjunction */
+	private final long[][] masks;
+	/** aspect annotations per conjunction */
+	private final Set<OWLAnnotation>[] conjunctAnnotations;
+	/** aspect annotations of all conjunctions */
+	private final Set<OWLAnnotation> allAnnotations;
+	/** memoized results per aspect signature class: 0 unknown, 1 true, 2 false */
+	private volatile byte[] memo = new byte[0];
+	
+	@SuppressWarnings("unchecked")
+	private AspectPredicate(String[][] aspects, OWLDataFactory df) {
+		this.aspects = aspects;
+		this.masks = AspectBits.masks(aspects);
+		this.conjunctAnnotations = new Set[aspects.length];
+		OWLAnnotationProperty aspectProp = BasicHelper.getAspectProperty(df);
+		Set<OWLAnnotation> all = new HashSet<OWLAnnotation>();
+		for (int i = 0; i < aspects.length; i++) {
+			Set<OWLAnnotation> annos = new HashSet<OWLAnnotation>(aspects[i].length);
+			for (String aspectIRI : aspects[i]) {
+				annos.add(df.getOWLAnnotation(aspectProp, IRI.create(aspectIRI)));
+			}
+			conjunctAnnotations[i] = Collections.unmodifiableSet(annos);
+			all.addAll(annos);
+		}
+		this.allAnnotations = Collections.unmodifiableSet(all);
+	}
+	
+	/**
+	 * gets the compiled predicate for this annotation, compiling it on first use
+	 * 
+	 * @param annotation
+	 * 			Annotation of type OWLAspectAnd or OWLAspectOr specifying current aspects
+	 * @param df
+	 * 			data factory used to create aspect annotations
+	 * @return compiled predicate
+	 */
+	public static AspectPredicate of(Annotation annotation, OWLDataFactory df) {
+		ConcurrentMap<Annotation, AspectPredicate> predicates = cache.get(df);
+		if (predicates == null) {
+			predicates = cache.computeIfAbsent(df, key -> new ConcurrentHashMap<Annotation, AspectPredicate>());
+		}
+		AspectPredicate predicate = predicates.get(annotation);
+		if (predicate == null) {
+			predicate = predicates.computeIfAbsent(annotation, 
+					key -> new AspectPredicate(BasicHelper.transformAnnotationToAspects(key), df));
+		}
+		return predicate;
+	}
+	
+	/**
+	 * compiles a predicate for these aspects (the result is not cached)
+	 * 
+	 * @param aspects
+	 * 			array of string arrays, where 
+	 * 			the outer array represents logical disjunction (OR),  
+	 * 			and the inner array represents logical conjunction (AND)
+	 * @param df
+	 * 			data factory used to create aspect annotations
+	 * @return compiled predicate
+	 */
+	public static AspectPredicate of(String[][] aspects, OWLDataFactory df) {
+		String[][] copy = new String[aspects.length][];
+		for (int i = 0; i < aspects.length; i++) {
+			copy[i] = aspects[i].clone();
+		}
+		return new AspectPredicate(copy, df);
+	}
+	
+	/**
+	 * gets the compiled predicate for these aspects, compiling it on first use
+	 * 
+	 * @param aspects
+	 * 			array of string arrays, where 
+	 * 			the outer array represents logical disjunction (OR),  
+	 * 			and the inner array represents logical conjunction (AND)
+	 * @param df
+	 * 			data factory used to create aspect annotations
+	 * @return compiled predicate (cached by the contents of the arrays)
+	 */
+	public static AspectPredicate ofCached(String[][] aspects, OWLDataFactory df) {
+		ConcurrentMap<AspectsKey, AspectPredicate> predicates = aspectsCache.get(df);
+		if (predicates == null) {
+			predicates = aspectsCache.computeIfAbsent(df, key -> new ConcurrentHashMap<AspectsKey, AspectPredicate>());
+		}
+		AspectPredicate predicate = predicates.get(new AspectsKey(aspects));
+		if (predicate == null) {
+			// the key must not share the arrays of the caller
+			predicate = of(aspects, df);
+			AspectPredicate existing = predicates.putIfAbsent(new AspectsKey(predicate.aspects), predicate);
+			if (existing != null) {
+				predicate = existing;
+			}
+		}
+		return predicate;
+	}
+	
+	/**
+	 * checks if this aspect bitset satisfies at least one conjunction of the predicate
+	 * 
+	 * @param bits
+	 * 			aspect bitset of an axiom
+	 * @return true, if bits contain all aspects of at least one conjunction
+	 */
+	public boolean test(long[] bits) {
+		return AspectBits.containsAny(bits, masks);
+	}
+	
+	/**
+	 * checks if axioms of this aspect signature class satisfy the predicate. 
+	 * The result is computed once per class and then memoized.
+	 * 
+	 * @param classId
+	 * 			id of an aspect signature class (see {@link AspectClasses})
+	 * @return true, if the aspects of this class contain all aspects of at least one conjunction
+	 */
+	public boolean testClass(int classId) {
+		byte[] results = memo;
+		if (classId < results.length && results[classId] != 0) {
+			return results[classId] == 1;
+		}
+		boolean result = test(AspectClasses.bitsOf(classId));
+		remember(classId, result);
+		return result;
+	}
+	
+	private synchronized void remember(int classId, boolean result) {
+		byte[] results = memo;
+		if (classId >= results.length) {
+			results = Arrays.copyOf(results, Math.max(classId + 1, results.length * 2));
+		}
+		results[classId] = (byte) (result ? 1 : 2);
+		memo = results;
+	}
+	
+	/**
+	 * checks if this aspect bitset contains all aspects of the conjunction with this index
+	 * 
+	 * @param bits
+	 * 			aspect bitset of an axiom
+	 * @param conjunct
+	 * 			index of the conjunction
+	 * @return true, if bits contain all aspects of this conjunction
+	 */
+	public boolean testConjunct(long[] bits, int conjunct) {
+		return AspectBits.containsAll(bits, masks[conjunct]);
+	}
+	
+	/**
+	 * @return number of conjunctions (combined with logical disjunction)
+	 */
+	public int getConjunctCount() {
+		return aspects.length;
+	}
+	
+	/**
+	 * @param conjunct
+	 * 			index of the conjunction
+	 * @return copy of the aspect IRIs of this conjunction
+	 */
+	public String[] getConjunct(int conjunct) {
+		return aspects[conjunct].clone();
+	}
+	
+	/**
+	 * @param conjunct
+	 * 			index of the conjunction
+	 * @return aspect annotations of this conjunction (unmodifiable)
+	 */
+	public Set<OWLAnnotation> getAnnotations(int conjunct) {
+		return conjunctAnnotations[conjunct];
+	}
+	
+	/**
+	 * @return aspect annotations of all conjunctions (unmodifiable)
+	 */
+	public Set<OWLAnnotation> getAllAnnotations() {
+		return allAnnotations;
+	}
+	
+	/**
+	 * aspect IRIs compared by content
+	 */
+	private static final class AspectsKey {
+		
+		private final String[][] aspects;
+		private final int hash;
+		
+		AspectsKey(String[][] aspects) {
+			this.aspects = aspects;
+			this.hash = Arrays.deepHashCode(aspects);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof AspectsKey && Arrays.deepEquals(aspects, ((AspectsKey) obj).aspects);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.search.EntitySearcher;
+
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+
+/**
+ * Caches the aspect annotation properties of an ontology: 
+ * isPointcutOf and all its (transitive) sub-properties in the ontology including imports closure.
+ * 
+ * <p>The cached closures are dropped when a sub-annotation-property axiom or an import is changed.
+ */
+public final class AspectProperties {
+	
+	/** closures per ontology (weak, identity based keys) */
+	private static final ConcurrentMap<OWLOntology, Set<OWLAnnotationProperty>> closures = 
+			new MapMaker().weakKeys().makeMap();
+	
+	/** drops cached closures when the property hierarchy may have changed */
+	private static final OWLOntologyChangeListener invalidator = new ClosureInvalidator();
+	
+	private AspectProperties() {
+	}
+	
+	/**
+	 * gets isPointcutOf together with all its sub-properties in this ontology including imports closure
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return set of aspect annotation properties (unmodifiable)
+	 */
+	public static Set<OWLAnnotationProperty> get(OWLOntology onto) {
+		Set<OWLAnnotationProperty> closure = closures.get(onto);
+		if (closure == null) {
+			ManagerListeners.register(onto.getOWLOntologyManager(), invalidator);
+			closure = closures.computeIfAbsent(onto, AspectProperties::computeClosure);
+		}
+		return closure;
+	}
+	
+	/**
+	 * registers the listener dropping outdated closures of aspect properties on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, invalidator);
+	}
+	
+	private static Set<OWLAnnotationProperty> computeClosure(OWLOntology onto) {
+		OWLAnnotationProperty aspectProp = BasicHelper.getAspectProperty(onto.getOWLOntologyManager().getOWLDataFactory());
+		return Collections.unmodifiableSet(fillSubProperties(new HashSet<OWLAnnotationProperty>(), aspectProp, onto));
+	}
+	
+	/**
+	 * checks whether this change may change the closures of aspect properties, 
+	 * i.e. whether it changes an annotation property hierarchy or an imports closure
+	 * 
+	 * @param change
+	 * 			ontology change
+	 * @return true, if aspect properties have to be looked up again after this change
+	 */
+	public static boolean changesClosure(OWLOntologyChange change) {
+		return change.isImportChange() || (change.isAxiomChange() 
+				&& change.getAxiom().isOfType(AxiomType.SUB_ANNOTATION_PROPERTY_OF));
+	}
+	
+	/**
+	 * adds this annotation property to this set 
+	 * and fills it also with subproperties of this property in this ontology including imports closure
+	 * 
+	 * @param set
+	 * 			set of annotation properties
+	 * @param property
+	 * 			annotation property to be added together with its subproperties
+	 * @param onto
+	 * 			ontology
+	 * @return
+	 * 			set filled with this property and its subproperties
+	 */
+	private static Set<OWLAnnotationProperty> fillSubProperties(Set<OWLAnnotationProperty> set, OWLAnnotationProperty property, OWLOntology onto) {
+		// properties already visited are skipped, so cycles in the hierarchy do not matter
+		if (set.add(property)) {
+			for (OWLAnnotationProperty subProperty : EntitySearcher.getSubProperties(property, onto, true)) {
+				fillSubProperties(set, subProperty, onto);
+			}
+		}
+		return set;
+	}
+	
+	/**
+	 * drops all cached closures if a change may affect the annotation property hierarchy
+	 */
+	private static class ClosureInvalidator implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				if (changesClosure(change)) {
+					// the changed ontology may be imported by others, so we drop all closures
+					closures.clear();
+					return;
+				}
+			}
+		}
+	}
+
+}
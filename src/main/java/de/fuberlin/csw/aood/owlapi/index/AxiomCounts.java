@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Per-ontology counters of axioms with aspects, 
+ * by axiom type and set of aspect signature classes (see {@link AspectClasses}).
+ * 
+ * <p>Filtered axioms are counted without annotations, so all axioms which differ only in annotations 
+ * (variants) are counted once. Every such axiom is counted under the classes of all its variants, 
+ * and it satisfies a predicate if one of these classes does. 
+ * So the number of axioms satisfying a predicate is the sum of the counters whose classes satisfy it, 
+ * independent of the size of the ontology. 
+ * Axioms without aspects are not counted, since they satisfy no predicate with aspects.
+ * 
+ * <p>The counters are built on first use, holding the lock of the ontology, and kept up to date by a change listener 
+ * registered on the manager of the ontology. They are rebuilt together with the aspect index.
+ */
+public final class AxiomCounts {
+	
+	/** counters of ontologies (weak, identity based keys) */
+	private static final Map<OWLOntology, AxiomCounts> counters = new MapMaker().weakKeys().makeMap();
+	
+	/** keeps all counters in sync with changes of their ontologies */
+	private static final OWLOntologyChangeListener maintainer = new CountMaintainer();
+	/** changes seen by the maintainer */
+	private static final ChangeCounts changeCounts = new ChangeCounts();
+	
+	/** aspect index the classes of axioms are taken from */
+	private final AspectIndex index;
+	/** axioms with aspects (without annotations) mapped to the sorted classes of their variants */
+	private final Map<OWLAxiom, int[]> variantClasses = new HashMap<OWLAxiom, int[]>();
+	/** number of axioms by axiom type and distinct classes of their variants */
+	private final Map<AxiomType<?>, Map<ClassSet, Integer>> counts = new HashMap<AxiomType<?>, Map<ClassSet, Integer>>();
+	/** axiom types of logical axioms */
+	private final Set<AxiomType<?>> logicalTypes = new HashSet<AxiomType<?>>();
+	
+	private AxiomCounts(OWLOntology onto, AspectIndex index) {
+		this.index = index;
+		for (OWLAxiom ax : onto.getAxioms()) {
+			add(ax);
+		}
+	}
+	
+	/**
+	 * gets the counters of this ontology, building them if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return axiom counters of this ontology
+	 */
+	public static AxiomCounts get(OWLOntology onto) {
+		AspectIndex index = AspectIndex.get(onto);
+		AxiomCounts axiomCounts = counters.get(onto);
+		// the classes of axioms change if the index is rebuilt
+		if (axiomCounts == null || axiomCounts.index != index) {
+			axiomCounts = build(onto);
+		}
+		return axiomCounts;
+	}
+	
+	/**
+	 * builds and publishes the counters of this ontology, unless another thread has just done so. 
+	 * The ontology is scanned holding its lock (see {@link AxiomLocks#lockOntologies}), 
+	 * and scanned again if a change by a writer not holding it was missed.
+	 */
+	private static AxiomCounts build(OWLOntology onto) {
+		ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+		List<Lock> locks = AxiomLocks.lockOntologies(Collections.singleton(onto));
+		try {
+			AxiomCounts axiomCounts = counters.get(onto);
+			AspectIndex index = AspectIndex.get(onto);
+			while (axiomCounts == null || axiomCounts.index != index) {
+				long changes = changeCounts.get(onto);
+				axiomCounts = new AxiomCounts(onto, index);
+				counters.put(onto, axiomCounts);
+				if (changeCounts.get(onto) != changes) {
+					axiomCounts = null;
+				}
+				index = AspectIndex.get(onto);
+			}
+			return axiomCounts;
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * registers the listener keeping the axiom counters up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * counts the axioms of the ontology which satisfy this predicate, counting variants once
+	 * 
+	 * @param predicate
+	 * 			predicate which is not satisfied by axioms without aspects
+	 * @return number of axioms without annotations satisfying this predicate
+	 */
+	public int count(AspectPredicate predicate) {
+		return count(predicate, null, false);
+	}
+	
+	/**
+	 * counts the axioms of this type which satisfy this predicate, counting variants once
+	 * 
+	 * @param predicate
+	 * 			predicate which is not satisfied by axioms without aspects
+	 * @param axiomType
+	 * 			type of counted axioms
+	 * @return number of axioms without annotations satisfying this predicate
+	 */
+	public int count(AspectPredicate predicate, AxiomType<?> axiomType) {
+		return count(predicate, axiomType, false);
+	}
+	
+	/**
+	 * counts the logical axioms which satisfy this predicate, counting variants once
+	 * 
+	 * @param predicate
+	 * 			predicate which is not satisfied by axioms without aspects
+	 * @return number of logical axioms without annotations satisfying this predicate
+	 */
+	public int countLogical(AspectPredicate predicate) {
+		return count(predicate, null, true);
+	}
+	
+	private synchronized int count(AspectPredicate predicate, AxiomType<?> axiomType, boolean logicalOnly) {
+		int count = 0;
+		for (Map.Entry<AxiomType<?>, Map<ClassSet, Integer>> typeCounts : counts.entrySet()) {
+			if ((axiomType != null && !axiomType.equals(typeCounts.getKey())) 
+					|| (logicalOnly && !logicalTypes.contains(typeCounts.getKey()))) {
+				continue;
+			}
+			for (Map.Entry<ClassSet, Integer> classCount : typeCounts.getValue().entrySet()) {
+				if (classCount.getKey().satisfies(predicate)) {
+					count += classCount.getValue();
+				}
+			}
+		}
+		return count;
+	}
+	
+	private synchronized void add(OWLAxiom ax) {
+		int classId = index.getClassId(ax);
+		if (classId == AspectClasses.NO_ASPECTS) {
+			return;
+		}
+		OWLAxiom axBase = ax.getAxiomWithoutAnnotations();
+		int[] before = variantClasses.get(axBase);
+		int[] after = ClassMultisets.add(before, classId);
+		variantClasses.put(axBase, after);
+		if (ax.isLogicalAxiom()) {
+			logicalTypes.add(ax.getAxiomType());
+		}
+		move(ax.getAxiomType(), before, after);
+	}
+	
+	private synchronized void remove(OWLAxiom ax) {
+		int classId = index.getClassId(ax);
+		if (classId == AspectClasses.NO_ASPECTS) {
+			return;
+		}
+		OWLAxiom axBase = ax.getAxiomWithoutAnnotations();
+		int[] before = variantClasses.get(axBase);
+		int[] after = ClassMultisets.remove(before, classId);
+		if (after == before) {
+			return;
+		}
+		if (after == null) {
+			variantClasses.remove(axBase);
+		} else {
+			variantClasses.put(axBase, after);
+		}
+		move(ax.getAxiomType(), before, after);
+	}
+	
+	/**
+	 * moves an axiom of this type from the counter of the classes before to the counter of the classes after a change
+	 */
+	private void move(AxiomType<?> axiomType, int[] before, int[] after) {
+		ClassSet from = (before != null) ? new ClassSet(before) : null;
+		ClassSet to = (after != null) ? new ClassSet(after) : null;
+		if (from != null && from.equals(to)) {
+			return;
+		}
+		Map<ClassSet, Integer> typeCounts = counts.get(axiomType);
+		if (typeCounts == null) {
+			typeCounts = new HashMap<ClassSet, Integer>();
+			counts.put(axiomType, typeCounts);
+		}
+		if (from != null) {
+			int count = typeCounts.get(from) - 1;
+			if (count == 0) {
+				typeCounts.remove(from);
+			} else {
+				typeCounts.put(from, count);
+			}
+		}
+		if (to != null) {
+			typeCounts.merge(to, 1, Integer::sum);
+		}
+	}
+	
+	/**
+	 * distinct classes of the variants of an axiom
+	 */
+	private static final class ClassSet {
+		
+		private final int[] classIds;
+		private final int hash;
+		
+		/**
+		 * @param sortedClassIds
+		 * 			sorted class ids, possibly containing duplicates
+		 */
+		ClassSet(int[] sortedClassIds) {
+			int distinct = 0;
+			int[] ids = new int[sortedClassIds.length];
+			for (int i = 0; i < sortedClassIds.length; i++) {
+				if (i == 0 || sortedClassIds[i] != sortedClassIds[i - 1]) {
+					ids[distinct++] = sortedClassIds[i];
+				}
+			}
+			this.classIds = Arrays.copyOf(ids, distinct);
+			this.hash = Arrays.hashCode(classIds);
+		}
+		
+		boolean satisfies(AspectPredicate predicate) {
+			for (int classId : classIds) {
+				if (predicate.testClass(classId)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ClassSet && Arrays.equals(classIds, ((ClassSet) obj).classIds);
+		}
+	}
+	
+	/**
+	 * updates the counters of changed ontologies
+	 */
+	private static class CountMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				if (!change.isAxiomChange()) {
+					continue;
+				}
+				changeCounts.increment(change.getOntology());
+				AxiomCounts axiomCounts = counters.get(change.getOntology());
+				if (axiomCounts != null) {
+					if (change.isAddAxiom()) {
+						axiomCounts.add(change.getAxiom());
+					} else {
+						axiomCounts.remove(change.getAxiom());
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,860 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLLogicalAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.Config;
+
+/**
+ * Per-ontology index of axioms by their key ignoring aspects, 
+ * i.e. the axiom without annotations together with its regular (non-aspect) annotations.
+ * 
+ * <p>All axioms which are equal if annotations are ignored (variants) are stored under the axiom without annotations, 
+ * each with its regular annotations and its aspect signature class (see {@link AspectClasses}). 
+ * The aspect index reads the classes of the axioms of the ontology from here (see {@link AspectIndex#getClassId}), 
+ * so they are held in this index only. 
+ * So the axioms which differ from a given axiom only in aspect annotations, 
+ * and whether one of them has current aspects, are found with a single lookup 
+ * instead of a scan of all axioms of the same type.
+ * 
+ * <p>The index is built on first use, holding the lock of the ontology, and kept up to date by a change listener 
+ * registered on the manager of the ontology. It is rebuilt together with the aspect index, 
+ * since the aspect properties decide which annotations are regular. 
+ * Writers changing aspect properties do this before they release their locks (see refresh()).
+ * 
+ * <p>If configured (snapshotReads), the index is stored in immutable versions. 
+ * All changes broadcast together are applied to a copy of the affected parts (segments of the axioms of one type) 
+ * and published as a new version at once, so readers never see a partly applied change list, e.g. a half re-tagged axiom. 
+ * A rebuilt index is published the same way, as a new version of the same index. 
+ * A {@link Snapshot} pins one version, and can be iterated without locks while the ontology is changed. 
+ * Snapshots taken with snapshot(OWLOntology) only read the published version and never scan the ontology, 
+ * except for building the index on first use.
+ * 
+ * <p>Otherwise changes are applied in place to concurrent maps, which readers iterate weakly consistently, 
+ * and a snapshot copies the index.
+ */
+public final class AxiomKeyIndex {
+	
+	/** indexes of ontologies (weak, identity based keys) */
+	private static final Map<OWLOntology, AxiomKeyIndex> indexes = new MapMaker().weakKeys().makeMap();
+	
+	/** keeps all indexes in sync with changes of their ontologies */
+	private static final OWLOntologyChangeListener maintainer = new IndexMaintainer();
+	/** changes seen by the maintainer */
+	private static final ChangeCounts changeCounts = new ChangeCounts();
+	
+	/** result of getClassId() for axioms whose class is not held by the index */
+	static final int UNKNOWN_CLASS = -1;
+	
+	/** whether changes are published as new immutable versions instead of being applied in place */
+	private static final boolean versioned;
+	
+	static {
+		versioned = (boolean)Config.instance().get("snapshotReads");
+	}
+	
+	/** current version, mapping axioms without annotations to their variants in the ontology */
+	private volatile Version current;
+	
+	private AxiomKeyIndex(Version version) {
+		current = version;
+	}
+	
+	/**
+	 * gets the axiom key index of this ontology, building it if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return axiom key index of this ontology
+	 */
+	public static AxiomKeyIndex get(OWLOntology onto) {
+		AspectIndex index = AspectIndex.getForProperties(onto);
+		AxiomKeyIndex keyIndex = indexes.get(onto);
+		// the classes and regular annotations of axioms change if the aspect index is rebuilt
+		if (keyIndex == null || keyIndex.current.index != index) {
+			keyIndex = build(onto);
+		}
+		return keyIndex;
+	}
+	
+	/**
+	 * pins the published version of the axiom key index of this ontology. 
+	 * Unlike get(), this never rebuilds an index which has been published already, 
+	 * since writers changing aspect properties rebuild it before they release their locks (see refresh()).
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return snapshot of the axioms of the ontology, not affected by later changes
+	 */
+	public static Snapshot snapshot(OWLOntology onto) {
+		AxiomKeyIndex keyIndex = indexes.get(onto);
+		return (keyIndex != null) ? keyIndex.snapshot() : get(onto).snapshot();
+	}
+	
+	/**
+	 * rebuilds the published indexes of ontologies of this manager whose aspect properties have changed. 
+	 * Called by writers which have changed aspect properties (see {@link AspectProperties#changesClosure}), 
+	 * holding the locks of all ontologies of the manager, so readers of snapshots never see an outdated index.
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	public static void refresh(OWLOntologyManager om) {
+		for (OWLOntology onto : om.getOntologies()) {
+			if (indexes.containsKey(onto)) {
+				get(onto);
+			}
+		}
+	}
+	
+	/**
+	 * builds and publishes the axiom key index of this ontology, unless another thread has just done so. 
+	 * The ontology is scanned holding its lock (see {@link AxiomLocks#lockOntologies}), 
+	 * and scanned again if a change by a writer not holding it was missed. 
+	 * An index which has been published already is kept, and the new version replaces its current one at once.
+	 */
+	private static AxiomKeyIndex build(OWLOntology onto) {
+		ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+		List<Lock> locks = AxiomLocks.lockOntologies(Collections.singleton(onto));
+		try {
+			AxiomKeyIndex keyIndex = indexes.get(onto);
+			AspectIndex index = AspectIndex.getForProperties(onto);
+			boolean missedChange = false;
+			while (keyIndex == null || keyIndex.current.index != index || missedChange) {
+				long changes = changeCounts.get(onto);
+				VersionWriter writer = new VersionWriter(Version.empty(), index, 
+						(keyIndex != null) ? keyIndex.current.number : 0);
+				for (OWLAxiom ax : onto.getAxioms()) {
+					add(writer, ax);
+				}
+				if (keyIndex == null) {
+					keyIndex = new AxiomKeyIndex(writer.publish());
+					indexes.put(onto, keyIndex);
+				} else {
+					synchronized (keyIndex) {
+						keyIndex.current = writer.publish();
+					}
+				}
+				index.setKeyIndex(keyIndex);
+				missedChange = changeCounts.get(onto) != changes;
+				index = AspectIndex.getForProperties(onto);
+			}
+			return keyIndex;
+		} finally {
+			AxiomLocks.unlock(locks);
+		}
+	}
+	
+	/**
+	 * registers the listener keeping the axiom key indexes up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * pins the current version of this index, copying it unless versions are immutable (snapshotReads)
+	 * 
+	 * @return snapshot of the axioms of the ontology, not affected by later changes
+	 */
+	public Snapshot snapshot() {
+		if (versioned) {
+			return new Snapshot(current);
+		}
+		synchronized (this) {
+			return new Snapshot(current.copy());
+		}
+	}
+	
+	/**
+	 * reads the current version of this index without copying it. 
+	 * Unless versions are immutable (snapshotReads), it is the index itself, 
+	 * so its queries see concurrent changes weakly consistently.
+	 * 
+	 * @return current version of the axioms of the ontology
+	 */
+	public Snapshot current() {
+		return new Snapshot(current);
+	}
+	
+	/**
+	 * gets the regular annotations of this axiom, 
+	 * i.e. its annotations which are not aspect annotations of the ontology (see {@link AspectIndex#isAspectAnnotation(OWLAnnotation)})
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return set of regular annotations
+	 */
+	public Set<OWLAnnotation> getRegularAnnotations(OWLAxiom ax) {
+		return getRegularAnnotations(ax, current.index);
+	}
+	
+	private static Set<OWLAnnotation> getRegularAnnotations(OWLAxiom ax, AspectIndex index) {
+		if (!ax.isAnnotated()) {
+			return Collections.emptySet();
+		}
+		Set<OWLAnnotation> regularAnnotations = new HashSet<OWLAnnotation>();
+		for (OWLAnnotation anno : ax.getAnnotations()) {
+			if (!index.isAspectAnnotation(anno)) {
+				regularAnnotations.add(anno);
+			}
+		}
+		return regularAnnotations;
+	}
+	
+	/**
+	 * checks if the ontology contains this axiom, without reading the ontology itself
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return true, if the ontology contains this axiom with exactly these annotations
+	 */
+	public boolean containsAxiom(OWLAxiom ax) {
+		for (Variant variant : lookup(ax)) {
+			if (variant.axiom.equals(ax)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * gets the axioms of the ontology which are equal to this axiom if annotations are ignored
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @return new set of variants of this axiom
+	 */
+	public Set<OWLAxiom> getVariants(OWLAxiom ax) {
+		return getSimilarAxioms(ax, null);
+	}
+	
+	/**
+	 * gets the axioms of the ontology which are equal to this axiom if annotations are ignored 
+	 * and have these regular annotations
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @param regularAnnotations
+	 * 			regular annotations of the requested axioms, or null to ignore annotations
+	 * @return new set of similar axioms
+	 */
+	public Set<OWLAxiom> getSimilarAxioms(OWLAxiom ax, Set<OWLAnnotation> regularAnnotations) {
+		Set<OWLAxiom> similarAxioms = new HashSet<OWLAxiom>();
+		for (Variant variant : lookup(ax)) {
+			if (regularAnnotations == null || variant.regularAnnotations.equals(regularAnnotations)) {
+				similarAxioms.add(variant.axiom);
+			}
+		}
+		return similarAxioms;
+	}
+	
+	/**
+	 * checks if the ontology contains an axiom which is equal to this axiom if annotations are ignored, 
+	 * has these regular annotations and satisfies this predicate
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @param regularAnnotations
+	 * 			regular annotations of the requested axiom, or null to ignore annotations
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if such an axiom with these aspects exists, 
+	 * 			false otherwise
+	 */
+	public boolean containsSimilar(OWLAxiom ax, Set<OWLAnnotation> regularAnnotations, AspectPredicate predicate) {
+		return containsSimilar(lookup(ax), regularAnnotations, predicate);
+	}
+	
+	/**
+	 * checks if the ontology contains an axiom which is equal to this axiom if annotations are ignored, 
+	 * has the same regular annotations as this axiom and satisfies this predicate. 
+	 * The regular annotations of this axiom are only computed if the ontology contains a variant of it, 
+	 * so checking an axiom which is not contained at all takes a single lookup.
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if such an axiom with these aspects exists, 
+	 * 			false otherwise
+	 */
+	public boolean containsSimilar(OWLAxiom ax, AspectPredicate predicate) {
+		Version version = current;
+		Variant[] variants = version.get(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax);
+		if (variants.length == 0) {
+			return false;
+		}
+		return containsSimilar(variants, getRegularAnnotations(ax, version.index), predicate);
+	}
+	
+	private static boolean containsSimilar(Variant[] variants, Set<OWLAnnotation> regularAnnotations, AspectPredicate predicate) {
+		for (Variant variant : variants) {
+			if ((regularAnnotations == null || variant.regularAnnotations.equals(regularAnnotations)) 
+					&& predicate.testClass(variant.classId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * gets the aspect signature class of this axiom of the ontology, as computed by this aspect index
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @param index
+	 * 			aspect index asking for the class
+	 * @return id of the class of aspects this axiom is annotated with, 
+	 * 			or UNKNOWN_CLASS if the ontology does not contain this axiom or the index has been rebuilt for another aspect index
+	 */
+	int getClassId(OWLAxiom ax, AspectIndex index) {
+		Version version = current;
+		if (version.index != index) {
+			return UNKNOWN_CLASS;
+		}
+		for (Variant variant : version.get(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax)) {
+			if (variant.axiom.equals(ax)) {
+				return variant.classId;
+			}
+		}
+		return UNKNOWN_CLASS;
+	}
+	
+	/**
+	 * @return aspect index the classes and regular annotations of the current version are taken from
+	 */
+	AspectIndex getAspectIndex() {
+		return current.index;
+	}
+	
+	private Variant[] lookup(OWLAxiom ax) {
+		return current.get(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax);
+	}
+	
+	private static void add(VersionWriter variants, OWLAxiom ax) {
+		OWLAxiom axBase = ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax;
+		Variant[] axVariants = variants.get(axBase);
+		for (Variant existing : axVariants) {
+			if (existing.axiom.equals(ax)) {
+				// already added by a rebuild which scanned the ontology after this change
+				return;
+			}
+		}
+		Variant variant = new Variant(ax, getRegularAnnotations(ax, variants.index), variants.index.computeClass(ax));
+		if (axVariants.length == 0) {
+			variants.put(axBase, new Variant[] {variant});
+		} else {
+			axVariants = Arrays.copyOf(axVariants, axVariants.length + 1);
+			axVariants[axVariants.length - 1] = variant;
+			variants.put(axBase, axVariants);
+		}
+	}
+	
+	private static void replace(VersionWriter variants, OWLAxiom oldAx, OWLAxiom newAx) {
+		OWLAxiom axBase = newAx.isAnnotated() ? newAx.getAxiomWithoutAnnotations() : newAx;
+		Variant[] axVariants = variants.get(axBase);
+		for (int i = 0; i < axVariants.length; i++) {
+			if (axVariants[i].axiom.equals(oldAx)) {
+				axVariants = axVariants.clone();
+				axVariants[i] = new Variant(newAx, getRegularAnnotations(newAx, variants.index), variants.index.computeClass(newAx));
+				variants.put(axBase, axVariants);
+				return;
+			}
+		}
+		add(variants, newAx);
+	}
+	
+	private static void remove(VersionWriter variants, OWLAxiom ax) {
+		OWLAxiom axBase = ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax;
+		Variant[] axVariants = variants.get(axBase);
+		for (int i = 0; i < axVariants.length; i++) {
+			if (axVariants[i].axiom.equals(ax)) {
+				if (axVariants.length == 1) {
+					variants.remove(axBase);
+				} else {
+					Variant[] remaining = new Variant[axVariants.length - 1];
+					System.arraycopy(axVariants, 0, remaining, 0, i);
+					System.arraycopy(axVariants, i + 1, remaining, i, remaining.length - i);
+					variants.put(axBase, remaining);
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * axiom of the ontology with its regular annotations and its aspect signature class
+	 */
+	private static final class Variant {
+		
+		static final Variant[] NONE = new Variant[0];
+		
+		private final OWLAxiom axiom;
+		private final Set<OWLAnnotation> regularAnnotations;
+		private final int classId;
+		
+		Variant(OWLAxiom axiom, Set<OWLAnnotation> regularAnnotations, int classId) {
+			this.axiom = axiom;
+			this.regularAnnotations = regularAnnotations;
+			this.classId = classId;
+		}
+	}
+	
+	/**
+	 * version of the index, immutable once published if configured (snapshotReads). 
+	 * The variants of each axiom type are spread over segments by hash code, so a change only copies a segment.
+	 */
+	private static final class Version {
+		
+		/** number of entries a segment is meant to have */
+		static final int SEGMENT_SIZE = 32;
+		
+		private final long number;
+		/** aspect index the classes and regular annotations of the variants are taken from */
+		private final AspectIndex index;
+		/** segments mapping axioms without annotations to their variants, by index of the axiom type (null if none) */
+		private final Map<OWLAxiom, Variant[]>[][] segmentsByType;
+		/** number of entries by index of the axiom type */
+		private final int[] sizes;
+		
+		Version(long number, AspectIndex index, Map<OWLAxiom, Variant[]>[][] segmentsByType, int[] sizes) {
+			this.number = number;
+			this.index = index;
+			this.segmentsByType = segmentsByType;
+			this.sizes = sizes;
+		}
+		
+		Variant[] get(OWLAxiom axBase) {
+			Map<OWLAxiom, Variant[]>[] segments = segmentsByType[axBase.getAxiomType().getIndex()];
+			if (segments == null) {
+				return Variant.NONE;
+			}
+			Variant[] axVariants = segments[segmentOf(axBase, segments.length)].get(axBase);
+			return (axVariants != null) ? axVariants : Variant.NONE;
+		}
+		
+		/**
+		 * @return new version without axioms, which may be changed in place
+		 */
+		static Version empty() {
+			return new Version(0, null, newSegmentsByType(), new int[AxiomType.AXIOM_TYPES.size()]);
+		}
+		
+		/**
+		 * @return version with copies of the segments of this version, so changes of this version do not affect it
+		 */
+		Version copy() {
+			Map<OWLAxiom, Variant[]>[][] segmentsCopy = newSegmentsByType();
+			for (int type = 0; type < segmentsByType.length; type++) {
+				if (segmentsByType[type] != null) {
+					segmentsCopy[type] = newSegments(segmentsByType[type].length);
+					for (int i = 0; i < segmentsByType[type].length; i++) {
+						segmentsCopy[type][i].putAll(segmentsByType[type][i]);
+					}
+				}
+			}
+			return new Version(number, index, segmentsCopy, sizes.clone());
+		}
+		
+		static int segmentOf(OWLAxiom axBase, int segmentCount) {
+			int h = axBase.hashCode();
+			return (h ^ (h >>> 16)) & (segmentCount - 1);
+		}
+		
+		@SuppressWarnings("unchecked")
+		static Map<OWLAxiom, Variant[]>[][] newSegmentsByType() {
+			return new Map[AxiomType.AXIOM_TYPES.size()][];
+		}
+		
+		@SuppressWarnings("unchecked")
+		static Map<OWLAxiom, Variant[]>[] newSegments(int segmentCount) {
+			Map<OWLAxiom, Variant[]>[] segments = new Map[segmentCount];
+			for (int i = 0; i < segmentCount; i++) {
+				// segments changed in place are read concurrently
+				segments[i] = versioned ? new HashMap<OWLAxiom, Variant[]>() : new ConcurrentHashMap<OWLAxiom, Variant[]>();
+			}
+			return segments;
+		}
+	}
+	
+	/**
+	 * builds a new version from a published one, copying each segment before its first change, 
+	 * or changing the published version in place unless versions are immutable (snapshotReads)
+	 */
+	private static final class VersionWriter {
+		
+		/** aspect index of the new version */
+		private final AspectIndex index;
+		/** number of the version the new version follows */
+		private final long number;
+		private final Map<OWLAxiom, Variant[]>[][] segmentsByType;
+		private final int[] sizes;
+		/** segments created by this writer, which may be changed */
+		private final Set<Map<OWLAxiom, Variant[]>> copied = 
+				Collections.newSetFromMap(new IdentityHashMap<Map<OWLAxiom, Variant[]>, Boolean>());
+		/** indexes of axiom types whose segment arrays have been copied (or changed in place) */
+		private final boolean[] typeCopied;
+		
+		VersionWriter(Version base) {
+			this(base, base.index, base.number);
+		}
+		
+		VersionWriter(Version base, AspectIndex index, long number) {
+			this.index = index;
+			this.number = number;
+			segmentsByType = versioned ? base.segmentsByType.clone() : base.segmentsByType;
+			sizes = versioned ? base.sizes.clone() : base.sizes;
+			typeCopied = new boolean[segmentsByType.length];
+		}
+		
+		Variant[] get(OWLAxiom axBase) {
+			Map<OWLAxiom, Variant[]>[] segments = segmentsByType[axBase.getAxiomType().getIndex()];
+			if (segments == null) {
+				return Variant.NONE;
+			}
+			Variant[] axVariants = segments[Version.segmentOf(axBase, segments.length)].get(axBase);
+			return (axVariants != null) ? axVariants : Variant.NONE;
+		}
+		
+		void put(OWLAxiom axBase, Variant[] axVariants) {
+			if (writableSegment(axBase).put(axBase, axVariants) == null) {
+				sizes[axBase.getAxiomType().getIndex()]++;
+			}
+		}
+		
+		void remove(OWLAxiom axBase) {
+			if (writableSegment(axBase).remove(axBase) != null) {
+				sizes[axBase.getAxiomType().getIndex()]--;
+			}
+		}
+		
+		private Map<OWLAxiom, Variant[]> writableSegment(OWLAxiom axBase) {
+			int type = axBase.getAxiomType().getIndex();
+			if (!versioned) {
+				if (segmentsByType[type] == null) {
+					segmentsByType[type] = Version.newSegments(1);
+				}
+				typeCopied[type] = true;
+				Map<OWLAxiom, Variant[]>[] segments = segmentsByType[type];
+				return segments[Version.segmentOf(axBase, segments.length)];
+			}
+			if (!typeCopied[type]) {
+				if (segmentsByType[type] == null) {
+					segmentsByType[type] = Version.newSegments(1);
+					copied.add(segmentsByType[type][0]);
+				} else {
+					segmentsByType[type] = segmentsByType[type].clone();
+				}
+				typeCopied[type] = true;
+			}
+			Map<OWLAxiom, Variant[]>[] segments = segmentsByType[type];
+			int segment = Version.segmentOf(axBase, segments.length);
+			if (!copied.contains(segments[segment])) {
+				segments[segment] = new HashMap<OWLAxiom, Variant[]>(segments[segment]);
+				copied.add(segments[segment]);
+			}
+			return segments[segment];
+		}
+		
+		/**
+		 * @return new version with all changes, using more segments for types which have grown
+		 */
+		Version publish() {
+			for (int type = 0; type < segmentsByType.length; type++) {
+				Map<OWLAxiom, Variant[]>[] segments = segmentsByType[type];
+				if (typeCopied[type] && sizes[type] > 2 * Version.SEGMENT_SIZE * segments.length) {
+					Map<OWLAxiom, Variant[]>[] resized = Version.newSegments(Integer.highestOneBit(sizes[type] / Version.SEGMENT_SIZE) * 2);
+					for (Map<OWLAxiom, Variant[]> segment : segments) {
+						for (Map.Entry<OWLAxiom, Variant[]> entry : segment.entrySet()) {
+							resized[Version.segmentOf(entry.getKey(), resized.length)].put(entry.getKey(), entry.getValue());
+						}
+					}
+					segmentsByType[type] = resized;
+				}
+			}
+			return new Version(number + 1, index, segmentsByType, sizes);
+		}
+	}
+	
+	/**
+	 * version of the index read by a reader. 
+	 * If pinned (see snapshot()), it is immutable, so it can be used by any thread without locks while the ontology is changed.
+	 */
+	public static final class Snapshot {
+		
+		private final Version version;
+		
+		private Snapshot(Version version) {
+			this.version = version;
+		}
+		
+		/**
+		 * @return number of the version, which grows with every change list applied to the ontology
+		 */
+		public long getVersion() {
+			return version.number;
+		}
+		
+		/**
+		 * checks if the ontology contained this axiom
+		 * 
+		 * @param ax
+		 * 			axiom
+		 * @return true, if the ontology contained this axiom with exactly these annotations
+		 */
+		public boolean containsAxiom(OWLAxiom ax) {
+			for (Variant variant : version.get(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax)) {
+				if (variant.axiom.equals(ax)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * checks if the ontology contained a variant of this axiom which satisfies this predicate
+		 * 
+		 * @param ax
+		 * 			axiom (annotations are ignored)
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return true, if the axiom was associated with these aspects
+		 */
+		public boolean containsAxiom(OWLAxiom ax, AspectPredicate predicate) {
+			for (Variant variant : version.get(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax)) {
+				if (predicate.testClass(variant.classId)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return new set of the axioms associated with these aspects (without annotations)
+		 */
+		public Set<OWLAxiom> getAxioms(AspectPredicate predicate) {
+			Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+			for (Map<OWLAxiom, Variant[]>[] segments : version.segmentsByType) {
+				collect(segments, predicate, axioms);
+			}
+			return axioms;
+		}
+		
+		/**
+		 * @param axiomType
+		 * 			type of axioms
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return new set of the axioms of this type associated with these aspects (without annotations)
+		 */
+		public <T extends OWLAxiom> Set<T> getAxioms(AxiomType<T> axiomType, AspectPredicate predicate) {
+			Set<T> axioms = new HashSet<T>();
+			collect(version.segmentsByType[axiomType.getIndex()], predicate, axioms);
+			return axioms;
+		}
+		
+		/**
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return new set of the logical axioms associated with these aspects (without annotations)
+		 */
+		public Set<OWLLogicalAxiom> getLogicalAxioms(AspectPredicate predicate) {
+			Set<OWLLogicalAxiom> axioms = new HashSet<OWLLogicalAxiom>();
+			for (AxiomType<?> axiomType : AxiomType.AXIOM_TYPES) {
+				if (axiomType.isLogical()) {
+					collect(version.segmentsByType[axiomType.getIndex()], predicate, axioms);
+				}
+			}
+			return axioms;
+		}
+		
+		/**
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return lazy stream of the axioms associated with these aspects (without annotations)
+		 */
+		public Stream<OWLAxiom> streamAxioms(AspectPredicate predicate) {
+			return stream(getSegments(AxiomType.AXIOM_TYPES), predicate);
+		}
+		
+		/**
+		 * @param axiomType
+		 * 			type of axioms
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return lazy stream of the axioms of this type associated with these aspects (without annotations)
+		 */
+		public <T extends OWLAxiom> Stream<T> streamAxioms(AxiomType<T> axiomType, AspectPredicate predicate) {
+			return stream(getSegments(Collections.<AxiomType<?>>singleton(axiomType)), predicate);
+		}
+		
+		/**
+		 * @param predicate
+		 * 			compiled aspect expression
+		 * @return lazy stream of the logical axioms associated with these aspects (without annotations)
+		 */
+		public Stream<OWLLogicalAxiom> streamLogicalAxioms(AspectPredicate predicate) {
+			List<AxiomType<?>> logicalTypes = new ArrayList<AxiomType<?>>();
+			for (AxiomType<?> axiomType : AxiomType.AXIOM_TYPES) {
+				if (axiomType.isLogical()) {
+					logicalTypes.add(axiomType);
+				}
+			}
+			return stream(getSegments(logicalTypes), predicate);
+		}
+		
+		/**
+		 * @return segments of the axioms of these types, 
+		 * 			flattened so a stream over them stops within the segment of the last axiom read
+		 */
+		private List<Map<OWLAxiom, Variant[]>> getSegments(Collection<AxiomType<?>> axiomTypes) {
+			List<Map<OWLAxiom, Variant[]>> typeSegments = new ArrayList<Map<OWLAxiom, Variant[]>>();
+			for (AxiomType<?> axiomType : axiomTypes) {
+				Map<OWLAxiom, Variant[]>[] segments = version.segmentsByType[axiomType.getIndex()];
+				if (segments != null) {
+					typeSegments.addAll(Arrays.asList(segments));
+				}
+			}
+			return typeSegments;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static <T> Stream<T> stream(List<Map<OWLAxiom, Variant[]>> segments, AspectPredicate predicate) {
+			return segments.stream()
+					.flatMap(segment -> segment.entrySet().stream())
+					.filter(entry -> matches(entry.getValue(), predicate))
+					.map(entry -> (T) entry.getKey());
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static <T> void collect(Map<OWLAxiom, Variant[]>[] segments, AspectPredicate predicate, Set<T> axioms) {
+			if (segments == null) {
+				return;
+			}
+			for (Map<OWLAxiom, Variant[]> segment : segments) {
+				for (Map.Entry<OWLAxiom, Variant[]> entry : segment.entrySet()) {
+					if (matches(entry.getValue(), predicate)) {
+						axioms.add((T) entry.getKey());
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return true, if one of these variants satisfies this predicate
+		 */
+		private static boolean matches(Variant[] variants, AspectPredicate predicate) {
+			for (Variant variant : variants) {
+				if (predicate.testClass(variant.classId)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * updates the indexes of changed ontologies
+	 */
+	private static class IndexMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			// changes of each index, in order
+			Map<AxiomKeyIndex, List<OWLOntologyChange>> changesByIndex = new IdentityHashMap<AxiomKeyIndex, List<OWLOntologyChange>>();
+			for (OWLOntologyChange change : changes) {
+				if (!change.isAxiomChange()) {
+					continue;
+				}
+				changeCounts.increment(change.getOntology());
+				AxiomKeyIndex keyIndex = indexes.get(change.getOntology());
+				if (keyIndex != null) {
+					List<OWLOntologyChange> indexChanges = changesByIndex.get(keyIndex);
+					if (indexChanges == null) {
+						indexChanges = new ArrayList<OWLOntologyChange>();
+						changesByIndex.put(keyIndex, indexChanges);
+					}
+					indexChanges.add(change);
+				}
+			}
+			for (Map.Entry<AxiomKeyIndex, List<OWLOntologyChange>> entry : changesByIndex.entrySet()) {
+				update(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		/**
+		 * applies these changes of the ontology of this index and publishes them as one new version
+		 */
+		private void update(AxiomKeyIndex keyIndex, List<OWLOntologyChange> changes) {
+			synchronized (keyIndex) {
+				VersionWriter writer = new VersionWriter(keyIndex.current);
+				for (int i = 0; i < changes.size(); i++) {
+					OWLOntologyChange change = changes.get(i);
+					if (change.isAddAxiom()) {
+						add(writer, change.getAxiom());
+					} else if (isReplacement(change, i + 1 < changes.size() ? changes.get(i + 1) : null)) {
+						// re-tagged axiom: update its entry in place
+						replace(writer, change.getAxiom(), changes.get(++i).getAxiom());
+					} else {
+						remove(writer, change.getAxiom());
+					}
+				}
+				keyIndex.current = writer.publish();
+			}
+		}
+		
+		/**
+		 * checks whether this removal and the next change replace an axiom by a variant of it
+		 */
+		private boolean isReplacement(OWLOntologyChange removal, OWLOntologyChange next) {
+			return next != null && next.isAddAxiom() && next.getOntology() == removal.getOntology() 
+					&& next.getAxiom().getAxiomWithoutAnnotations().equals(removal.getAxiom().getAxiomWithoutAnnotations());
+		}
+	}
+
+}
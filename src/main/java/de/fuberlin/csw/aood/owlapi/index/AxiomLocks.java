@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+
+import com.google.common.util.concurrent.Striped;
+
+import de.fuberlin.csw.aood.owlapi.Config;
+
+/**
+ * Locks making aspect-aware writes safe for concurrent callers.
+ * 
+ * <p>A write finds the axioms similar to the passed axiom and re-tags them, so it is guarded by one of 
+ * a fixed number of lock stripes, chosen by the axiom without annotations (see Config option writeLockStripes). 
+ * Writers of different axioms mostly hold different stripes and proceed in parallel, 
+ * writers of the same axiom are serialized. 
+ * Ontologies themselves are not thread-safe, so applying changes to an ontology is serialized 
+ * by a second set of stripes chosen by the ontology, held only while the manager applies the changes 
+ * and while an index of the ontology is built by scanning it.
+ * 
+ * <p>Stripes are always acquired in the same order, so writers holding several of them cannot deadlock. 
+ * The counters of acquisitions and contended acquisitions of axiom stripes help to choose the number of stripes.
+ */
+public final class AxiomLocks {
+	
+	private static final Striped<Lock> axiomStripes;
+	private static final Striped<Lock> ontologyStripes;
+	
+	private static final LongAdder acquisitions = new LongAdder();
+	private static final LongAdder contendedAcquisitions = new LongAdder();
+	private static final LongAdder waitNanos = new LongAdder();
+	
+	static {
+		int stripes = (int)Config.instance().get("writeLockStripes");
+		axiomStripes = Striped.lock(stripes);
+		ontologyStripes = Striped.lock(stripes);
+	}
+	
+	private AxiomLocks() {
+	}
+	
+	/**
+	 * acquires the stripes guarding writes of these axioms
+	 * 
+	 * @param axioms
+	 * 			axioms to be written
+	 * @return acquired locks, to be passed to unlock()
+	 */
+	public static List<Lock> lockAxioms(Collection<? extends OWLAxiom> axioms) {
+		List<OWLAxiom> axBases = new ArrayList<OWLAxiom>(axioms.size());
+		for (OWLAxiom ax : axioms) {
+			axBases.add(ax.isAnnotated() ? ax.getAxiomWithoutAnnotations() : ax);
+		}
+		List<Lock> locks = new ArrayList<Lock>();
+		for (Lock lock : axiomStripes.bulkGet(axBases)) {
+			acquisitions.increment();
+			if (!lock.tryLock()) {
+				contendedAcquisitions.increment();
+				long start = System.nanoTime();
+				lock.lock();
+				waitNanos.add(System.nanoTime() - start);
+			}
+			locks.add(lock);
+		}
+		return locks;
+	}
+	
+	/**
+	 * acquires the stripes guarding changes of these ontologies
+	 * 
+	 * @param ontologies
+	 * 			ontologies to be changed
+	 * @return acquired locks, to be passed to unlock()
+	 */
+	public static List<Lock> lockOntologies(Collection<OWLOntology> ontologies) {
+		List<Lock> locks = new ArrayList<Lock>();
+		for (Lock lock : ontologyStripes.bulkGet(ontologies)) {
+			lock.lock();
+			locks.add(lock);
+		}
+		return locks;
+	}
+	
+	/**
+	 * acquires the stripes guarding the ontologies changed by these changes. 
+	 * A change of aspect properties (see {@link AspectProperties#changesClosure}) also changes the indexes 
+	 * of ontologies importing the changed one, so then the stripes of all ontologies of the manager are acquired.
+	 * 
+	 * @param changes
+	 * 			changes of ontologies of one manager
+	 * @return acquired locks, to be passed to unlock()
+	 */
+	public static List<Lock> lockChangedOntologies(List<? extends OWLOntologyChange> changes) {
+		Set<OWLOntology> ontologies = Collections.newSetFromMap(new IdentityHashMap<OWLOntology, Boolean>());
+		for (OWLOntologyChange change : changes) {
+			if (AspectProperties.changesClosure(change)) {
+				return lockOntologies(change.getOntology().getOWLOntologyManager().getOntologies());
+			}
+			ontologies.add(change.getOntology());
+		}
+		return lockOntologies(ontologies);
+	}
+	
+	/**
+	 * releases these locks in reverse order
+	 * 
+	 * @param locks
+	 * 			locks returned by lockAxioms() or lockOntologies()
+	 */
+	public static void unlock(List<Lock> locks) {
+		for (int i = locks.size() - 1; i >= 0; i--) {
+			locks.get(i).unlock();
+		}
+	}
+	
+	/**
+	 * @return number of stripes guarding writes of axioms
+	 */
+	public static int getStripes() {
+		return axiomStripes.size();
+	}
+	
+	/**
+	 * @return number of axiom stripes acquired so far
+	 */
+	public static long getAcquisitions() {
+		return acquisitions.sum();
+	}
+	
+	/**
+	 * @return number of axiom stripes which were held by another writer when they were acquired
+	 */
+	public static long getContendedAcquisitions() {
+		return contendedAcquisitions.sum();
+	}
+	
+	/**
+	 * @return total time in nanoseconds writers have waited for axiom stripes
+	 */
+	public static long getWaitNanos() {
+		return waitNanos.sum();
+	}
+	
+	/**
+	 * resets the contention counters
+	 */
+	public static void resetStatistics() {
+		acquisitions.reset();
+		contendedAcquisitions.reset();
+		waitNanos.reset();
+	}
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Counts the changes of each ontology seen by the change listener of an index.
+ * 
+ * <p>An index built by scanning its ontology may miss a change which is broadcast before the index is published. 
+ * The listener counts a change before it looks up the index of the ontology, 
+ * so if the count has not moved from before the scan until after publishing, the published index has seen all changes.
+ */
+final class ChangeCounts {
+	
+	/** numbers of changes of ontologies (weak, identity based keys) */
+	private final ConcurrentMap<OWLOntology, AtomicLong> counts = new MapMaker().weakKeys().makeMap();
+	
+	/**
+	 * @param onto
+	 * 			ontology
+	 * @return number of changes of this ontology seen so far
+	 */
+	long get(OWLOntology onto) {
+		AtomicLong count = counts.get(onto);
+		return (count != null) ? count.get() : 0;
+	}
+	
+	/**
+	 * counts a change of this ontology
+	 * 
+	 * @param onto
+	 * 			changed ontology
+	 */
+	void increment(OWLOntology onto) {
+		AtomicLong count = counts.get(onto);
+		if (count == null) {
+			AtomicLong newCount = new AtomicLong();
+			count = counts.putIfAbsent(onto, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Arrays;
+
+/**
+ * Operations on multisets of aspect signature classes (see {@link AspectClasses}), 
+ * represented as sorted arrays of class ids which may contain duplicates.
+ * Arrays are never modified, every change returns a new array.
+ */
+final class ClassMultisets {
+	
+	private ClassMultisets() {
+	}
+	
+	/**
+	 * @param classIds
+	 * 			multiset of classes or null for the empty multiset
+	 * @param classId
+	 * 			class to be added
+	 * @return multiset containing this class once more
+	 */
+	static int[] add(int[] classIds, int classId) {
+		if (classIds == null) {
+			return new int[] {classId};
+		}
+		int[] added = Arrays.copyOf(classIds, classIds.length + 1);
+		added[classIds.length] = classId;
+		Arrays.sort(added);
+		return added;
+	}
+	
+	/**
+	 * @param classIds
+	 * 			multiset of classes or null for the empty multiset
+	 * @param classId
+	 * 			class to be removed
+	 * @return multiset containing this class once less (null if empty), 
+	 * 			or the same multiset if it does not contain this class
+	 */
+	static int[] remove(int[] classIds, int classId) {
+		int pos = (classIds != null) ? Arrays.binarySearch(classIds, classId) : -1;
+		if (pos < 0) {
+			return classIds;
+		}
+		if (classIds.length == 1) {
+			return null;
+		}
+		int[] remaining = new int[classIds.length - 1];
+		System.arraycopy(classIds, 0, remaining, 0, pos);
+		System.arraycopy(classIds, pos + 1, remaining, pos, remaining.length - pos);
+		return remaining;
+	}
+	
+	/**
+	 * @param classIds
+	 * 			multiset of classes or null for the empty multiset
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if one of these classes satisfies this predicate
+	 */
+	static boolean anySatisfies(int[] classIds, AspectPredicate predicate) {
+		if (classIds == null) {
+			return false;
+		}
+		for (int i = 0; i < classIds.length; i++) {
+			// classes are sorted, so every class is tested once
+			if ((i == 0 || classIds[i] != classIds[i - 1]) && predicate.testClass(classIds[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
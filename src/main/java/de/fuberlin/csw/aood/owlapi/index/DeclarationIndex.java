@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Per-ontology index from entities 
+ * to the aspect signature classes (see {@link AspectClasses}) of the declaration axioms referencing them.
+ * 
+ * <p>A declaration axiom references the declared entity as well as the annotation properties 
+ * of its annotations, so it is indexed for all entities of its signature. 
+ * Classes are kept per declaration, since the aspects of different declarations must not be combined.
+ * 
+ * <p>The index is built on first use and kept up to date by a change listener 
+ * registered on the manager of the ontology. It is rebuilt together with the aspect index.
+ */
+public final class DeclarationIndex {
+	
+	/** indexes of ontologies (weak, identity based keys) */
+	private static final Map<OWLOntology, DeclarationIndex> indexes = new MapMaker().weakKeys().makeMap();
+	
+	/** keeps all indexes in sync with changes of their ontologies */
+	private static final OWLOntologyChangeListener maintainer = new IndexMaintainer();
+	
+	/** aspect index the classes of axioms are taken from */
+	private final AspectIndex index;
+	/** entities mapped to the sorted classes of their referencing declarations (one entry per declaration) */
+	private final Map<OWLEntity, int[]> declarationClasses = new HashMap<OWLEntity, int[]>();
+	
+	private DeclarationIndex(OWLOntology onto, AspectIndex index) {
+		this.index = index;
+		for (OWLDeclarationAxiom ax : onto.getAxioms(AxiomType.DECLARATION)) {
+			add(ax);
+		}
+	}
+	
+	/**
+	 * gets the declaration index of this ontology, building it if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return declaration index of this ontology
+	 */
+	public static DeclarationIndex get(OWLOntology onto) {
+		AspectIndex index = AspectIndex.get(onto);
+		DeclarationIndex declIndex = indexes.get(onto);
+		// the classes of axioms change if the aspect index is rebuilt
+		if (declIndex == null || declIndex.index != index) {
+			ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+			declIndex = new DeclarationIndex(onto, index);
+			indexes.put(onto, declIndex);
+		}
+		return declIndex;
+	}
+	
+	/**
+	 * registers the listener keeping the declaration indexes up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * checks if a declaration axiom of the ontology referencing this entity satisfies this predicate
+	 * 
+	 * @param entity
+	 * 			entity
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @return true, if there is a referencing declaration axiom with these aspects, 
+	 * 			false otherwise
+	 */
+	public synchronized boolean isDeclaredWith(OWLEntity entity, AspectPredicate predicate) {
+		return ClassMultisets.anySatisfies(declarationClasses.get(entity), predicate);
+	}
+	
+	private synchronized void add(OWLAxiom ax) {
+		int classId = index.getClassId(ax);
+		for (OWLEntity entity : ax.getSignature()) {
+			declarationClasses.put(entity, ClassMultisets.add(declarationClasses.get(entity), classId));
+		}
+	}
+	
+	private synchronized void remove(OWLAxiom ax) {
+		int classId = index.getClassId(ax);
+		for (OWLEntity entity : ax.getSignature()) {
+			int[] classIds = ClassMultisets.remove(declarationClasses.get(entity), classId);
+			if (classIds == null) {
+				declarationClasses.remove(entity);
+			} else {
+				declarationClasses.put(entity, classIds);
+			}
+		}
+	}
+	
+	/**
+	 * updates the indexes of changed ontologies
+	 */
+	private static class IndexMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				DeclarationIndex declIndex = indexes.get(change.getOntology());
+				if (declIndex != null && change.isAxiomChange() 
+						&& change.getAxiom().isOfType(AxiomType.DECLARATION)) {
+					if (change.isAddAxiom()) {
+						declIndex.add(change.getAxiom());
+					} else {
+						declIndex.remove(change.getAxiom());
+					}
+				}
+			}
+		}
+	}
+
+}
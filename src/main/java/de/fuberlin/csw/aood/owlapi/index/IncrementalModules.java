@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLDifferentIndividualsAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLNaryIndividualAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSameIndividualAxiom;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import com.clarkparsia.owlapi.modularity.locality.LocalityClass;
+import com.clarkparsia.owlapi.modularity.locality.SyntacticLocalityEvaluator;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+
+/**
+ * Keeps extracted modules up to date while their ontology changes, 
+ * instead of extracting them again after every change.
+ * 
+ * <p>Changes of an ontology are recorded for each of its modules and applied on the next read. 
+ * Axioms which differ only in annotations have the same locality, and the OWL API extracts them together. 
+ * So if the changes only replace axioms by variants with other annotations 
+ * (as done when associating axioms with aspects) 
+ * and the signatures of the variants of every changed axiom stay the same, 
+ * the extraction would take the same steps and the variants are just replaced in the module. 
+ * 
+ * <p>Other added or removed axioms are checked for locality w.r.t. the signature the extraction ended with 
+ * (for STAR modules, the signature of the first bottom module, since later steps start from it). 
+ * A local axiom is never selected, so the module only changes by the declarations, annotations and 
+ * same or different individual axioms the module extractor adds for the entities of the signature. 
+ * An added axiom which is not local extends the module (or the bottom module of a STAR module), 
+ * checking only the axioms referencing entities added to the signature. 
+ * If a removed axiom is not local, or an import changes, the module is extracted again on the next read.
+ */
+final class IncrementalModules {
+	
+	/** number of recorded changes after which a module is extracted again instead of updated */
+	private static final int MAX_PENDING_CHANGES = 1024;
+	
+	/** live modules of ontologies (weak, identity based) */
+	private static final Map<OWLOntology, Cache<ModuleKey, LiveModule>> modules = new MapMaker().weakKeys().makeMap();
+	
+	private static final OWLOntologyChangeListener maintainer = new ModuleMaintainer();
+	
+	private IncrementalModules() {
+	}
+	
+	/**
+	 * gets the live module of this ontology for this signature, updating it if the ontology changed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param moduleType
+	 * 			type of module
+	 * @param signature
+	 * 			signature of the module (must not be modified afterwards)
+	 * @param maxModules
+	 * 			maximum number of live modules per ontology
+	 * @return module (unmodifiable)
+	 */
+	static Set<OWLAxiom> getModule(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature, int maxModules) {
+		ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+		Cache<ModuleKey, LiveModule> ontoModules;
+		synchronized (modules) {
+			ontoModules = modules.get(onto);
+			if (ontoModules == null) {
+				ontoModules = CacheBuilder.newBuilder().maximumSize(maxModules).build();
+				modules.put(onto, ontoModules);
+			}
+		}
+		try {
+			LiveModule live = ontoModules.get(new ModuleKey(moduleType, signature), 
+					() -> new LiveModule(moduleType, signature));
+			return live.get(onto);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * registers the listener keeping the live modules up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * module together with the changes of its ontology not applied yet
+	 */
+	private static class LiveModule {
+		
+		private final ModuleType moduleType;
+		private final Set<OWLEntity> signature;
+		/** current module, or null if it has to be extracted */
+		private Set<OWLAxiom> module;
+		/** 
+		 * signature the locality of added and removed axioms is checked against: 
+		 * the signature of the module together with the signature of its axioms selected by locality, 
+		 * or for STAR modules, the signature of the first (bottom) module computed on the way 
+		 */
+		private Set<OWLEntity> localitySignature;
+		/** for STAR modules, the first (bottom) module computed on the way */
+		private Set<OWLAxiom> bottomModule;
+		/** signature of the module together with the signature of its axioms selected by locality */
+		private Set<OWLEntity> enrichmentSignature;
+		private final List<OWLOntologyChange> pending = new ArrayList<OWLOntologyChange>();
+		
+		LiveModule(ModuleType moduleType, Set<OWLEntity> signature) {
+			this.moduleType = moduleType;
+			this.signature = signature;
+		}
+		
+		synchronized void record(OWLOntologyChange change) {
+			if (module != null) {
+				pending.add(change);
+				if (pending.size() > MAX_PENDING_CHANGES) {
+					invalidate();
+				}
+			}
+		}
+		
+		synchronized void invalidate() {
+			module = null;
+			pending.clear();
+		}
+		
+		synchronized Set<OWLAxiom> get(OWLOntology onto) {
+			if (module != null && !pending.isEmpty()) {
+				module = update(onto);
+				pending.clear();
+			}
+			if (module == null) {
+				module = ModuleCache.extract(onto, moduleType, signature);
+				computeSignatures(onto);
+			}
+			return module;
+		}
+		
+		/**
+		 * computes the signatures of the extracted module, 
+		 * following the steps of the module extractor
+		 * 
+		 * @param onto
+		 * 			ontology of this module
+		 */
+		private void computeSignatures(OWLOntology onto) {
+			if (moduleType == ModuleType.STAR) {
+				localitySignature = new HashSet<OWLEntity>(signature);
+				bottomModule = extendNonLocal(onto, getAxioms(onto), localitySignature, LocalityClass.BOTTOM_BOTTOM);
+				enrichmentSignature = getEnrichmentSignature(selectStarModule(module));
+			} else {
+				enrichmentSignature = new HashSet<OWLEntity>(signature);
+				extendNonLocal(onto, module, enrichmentSignature, getLocalityClass());
+				localitySignature = enrichmentSignature;
+			}
+		}
+		
+		/**
+		 * selects the largest subset of these axioms kept by both bottom and top extraction, 
+		 * as the module extractor does for STAR modules
+		 * 
+		 * @param axioms
+		 * 			axioms containing the module, e.g. the bottom module
+		 * @return axioms of the module selected by locality
+		 */
+		private Set<OWLAxiom> selectStarModule(Set<OWLAxiom> axioms) {
+			Set<OWLAxiom> selected = axioms;
+			Set<OWLAxiom> previous;
+			do {
+				previous = selected;
+				selected = selectNonLocal(selected, new HashSet<OWLEntity>(signature), LocalityClass.BOTTOM_BOTTOM);
+				selected = selectNonLocal(selected, new HashSet<OWLEntity>(signature), LocalityClass.TOP_TOP);
+			} while (selected.size() != previous.size());
+			return selected;
+		}
+		
+		/**
+		 * @return signature of the module together with the signature of these axioms
+		 */
+		private Set<OWLEntity> getEnrichmentSignature(Set<OWLAxiom> selected) {
+			Set<OWLEntity> enrichmentSignature = new HashSet<OWLEntity>(signature);
+			for (OWLAxiom ax : selected) {
+				enrichmentSignature.addAll(ax.getSignature());
+			}
+			return enrichmentSignature;
+		}
+		
+		/**
+		 * @return locality class of the first extraction step of this module type
+		 */
+		private LocalityClass getLocalityClass() {
+			return (moduleType == ModuleType.TOP) ? LocalityClass.TOP_TOP : LocalityClass.BOTTOM_BOTTOM;
+		}
+		
+		/**
+		 * applies the pending changes to the module
+		 * 
+		 * @param onto
+		 * 			ontology of this module
+		 * @return updated module, 
+		 * 			or null if the module has to be extracted again
+		 */
+		private Set<OWLAxiom> update(OWLOntology onto) {
+			// net effect of the changes
+			Set<OWLAxiom> added = new HashSet<OWLAxiom>();
+			Set<OWLAxiom> removed = new HashSet<OWLAxiom>();
+			for (OWLOntologyChange change : pending) {
+				if (change.isImportChange()) {
+					return null;
+				}
+				if (!change.isAxiomChange()) {
+					// ontology annotations are not part of modules
+					continue;
+				}
+				OWLAxiom ax = change.getAxiom();
+				if (change.isAddAxiom()) {
+					if (!removed.remove(ax)) {
+						added.add(ax);
+					}
+				} else if (!added.remove(ax)) {
+					removed.add(ax);
+				}
+			}
+			Set<OWLAxiom> changedBases = new HashSet<OWLAxiom>();
+			for (OWLAxiom ax : Sets.union(added, removed)) {
+				if (isImported(onto, ax)) {
+					// the imports closure contains this axiom before and after the change
+					return null;
+				}
+				changedBases.add(ax.getAxiomWithoutAnnotations());
+			}
+			Set<OWLAxiom> updated = new HashSet<OWLAxiom>(module);
+			Set<OWLAxiom> changedAdded = new HashSet<OWLAxiom>();
+			Set<OWLAxiom> changedRemoved = new HashSet<OWLAxiom>();
+			for (OWLAxiom axBase : changedBases) {
+				// variants of this axiom after and before the changes
+				Set<OWLAxiom> variantsAfter = new HashSet<OWLAxiom>();
+				for (OWLOntology importedOnto : onto.getImportsClosure()) {
+					variantsAfter.addAll(AxiomKeyIndex.get(importedOnto).getVariants(axBase));
+				}
+				Set<OWLAxiom> variantsBefore = new HashSet<OWLAxiom>(variantsAfter);
+				for (OWLAxiom ax : added) {
+					if (ax.getAxiomWithoutAnnotations().equals(axBase)) {
+						variantsBefore.remove(ax);
+						changedAdded.add(ax);
+					}
+				}
+				for (OWLAxiom ax : removed) {
+					if (ax.getAxiomWithoutAnnotations().equals(axBase)) {
+						variantsBefore.add(ax);
+						changedRemoved.add(ax);
+					}
+				}
+				if (getSignatures(variantsBefore).equals(getSignatures(variantsAfter))) {
+					// all variants of an axiom are in the module, or none
+					if (!Collections.disjoint(module, variantsBefore)) {
+						updated.removeAll(variantsBefore);
+						updated.addAll(variantsAfter);
+					}
+					if (bottomModule != null && !Collections.disjoint(bottomModule, variantsBefore)) {
+						bottomModule.removeAll(variantsBefore);
+						bottomModule.addAll(variantsAfter);
+					}
+					changedAdded.removeAll(variantsAfter);
+					changedRemoved.removeAll(variantsBefore);
+				}
+			}
+			// the remaining axioms change the signature of their variants, so their locality is checked
+			SyntacticLocalityEvaluator evaluator = new SyntacticLocalityEvaluator(getLocalityClass());
+			for (OWLAxiom ax : changedRemoved) {
+				if (!evaluator.isLocal(ax, localitySignature)) {
+					// the axiom may have been selected on the way
+					return null;
+				}
+				updated.remove(ax);
+			}
+			Set<OWLAxiom> nonLocal = new HashSet<OWLAxiom>();
+			for (OWLAxiom ax : changedAdded) {
+				if (!evaluator.isLocal(ax, localitySignature)) {
+					nonLocal.add(ax);
+				} else if (isEnrichment(ax, enrichmentSignature)) {
+					updated.add(ax);
+				}
+			}
+			if (!nonLocal.isEmpty() && moduleType == ModuleType.STAR) {
+				// the bottom module only grows, and the later steps start from it
+				bottomModule.addAll(extendNonLocal(onto, nonLocal, localitySignature, LocalityClass.BOTTOM_BOTTOM));
+				Set<OWLAxiom> selected = selectStarModule(bottomModule);
+				enrichmentSignature = getEnrichmentSignature(selected);
+				updated = new HashSet<OWLAxiom>(selected);
+				for (OWLEntity entity : enrichmentSignature) {
+					updated.addAll(getEnrichment(onto, entity));
+				}
+			} else if (!nonLocal.isEmpty()) {
+				// the module only grows, by the axioms which are not local w.r.t. the extended signature
+				Set<OWLEntity> previousSignature = new HashSet<OWLEntity>(enrichmentSignature);
+				updated.addAll(extendNonLocal(onto, nonLocal, enrichmentSignature, getLocalityClass()));
+				for (OWLEntity entity : Sets.difference(enrichmentSignature, previousSignature)) {
+					updated.addAll(getEnrichment(onto, entity));
+				}
+			}
+			return Collections.unmodifiableSet(updated);
+		}
+		
+		private Set<Set<OWLEntity>> getSignatures(Set<OWLAxiom> axioms) {
+			Set<Set<OWLEntity>> signatures = new HashSet<Set<OWLEntity>>();
+			for (OWLAxiom ax : axioms) {
+				signatures.add(ax.getSignature());
+			}
+			return signatures;
+		}
+		
+		/**
+		 * @return true if this axiom is contained in an ontology imported by this ontology
+		 */
+		private boolean isImported(OWLOntology onto, OWLAxiom ax) {
+			for (OWLOntology imported : onto.getImportsClosure()) {
+				if (imported != onto && imported.containsAxiom(ax)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * selects the axioms which are not local w.r.t. this signature, 
+	 * extending the signature by their signatures until no more axioms are selected 
+	 * (as a step of the module extractor does)
+	 * 
+	 * @param axioms
+	 * 			axioms to select from
+	 * @param signature
+	 * 			signature to be extended
+	 * @param localityClass
+	 * 			locality class
+	 * @return selected axioms
+	 */
+	private static Set<OWLAxiom> selectNonLocal(Set<OWLAxiom> axioms, Set<OWLEntity> signature, LocalityClass localityClass) {
+		SyntacticLocalityEvaluator evaluator = new SyntacticLocalityEvaluator(localityClass);
+		Set<OWLAxiom> remaining = new HashSet<OWLAxiom>(axioms);
+		Set<OWLAxiom> selected = new HashSet<OWLAxiom>();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Iterator<OWLAxiom> it = remaining.iterator(); it.hasNext();) {
+				OWLAxiom ax = it.next();
+				if (!evaluator.isLocal(ax, signature)) {
+					it.remove();
+					selected.add(ax);
+					changed |= signature.addAll(ax.getSignature());
+				}
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * extends this signature by the signatures of the axioms of the ontology including imports closure 
+	 * which are not local w.r.t. it, starting with these candidates. 
+	 * An axiom can only become non-local if the signature is extended by an entity of the axiom, 
+	 * so afterwards only the axioms referencing new entities are checked.
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param candidates
+	 * 			axioms to be checked first
+	 * @param signature
+	 * 			signature to be extended
+	 * @param localityClass
+	 * 			locality class
+	 * @return axioms found to be not local
+	 */
+	private static Set<OWLAxiom> extendNonLocal(OWLOntology onto, Collection<OWLAxiom> candidates, 
+			Set<OWLEntity> signature, LocalityClass localityClass) {
+		SyntacticLocalityEvaluator evaluator = new SyntacticLocalityEvaluator(localityClass);
+		Set<OWLAxiom> nonLocal = new HashSet<OWLAxiom>();
+		Deque<OWLEntity> newEntities = new ArrayDeque<OWLEntity>();
+		Collection<OWLAxiom> axioms = candidates;
+		while (axioms != null) {
+			for (OWLAxiom ax : axioms) {
+				if (!nonLocal.contains(ax) && !evaluator.isLocal(ax, signature)) {
+					nonLocal.add(ax);
+					for (OWLEntity entity : ax.getSignature()) {
+						if (signature.add(entity)) {
+							newEntities.add(entity);
+						}
+					}
+				}
+			}
+			OWLEntity entity = newEntities.poll();
+			axioms = (entity != null) ? onto.getReferencingAxioms(entity, Imports.INCLUDED) : null;
+		}
+		return nonLocal;
+	}
+	
+	/**
+	 * @return all axioms of the ontology including imports closure
+	 */
+	private static Set<OWLAxiom> getAxioms(OWLOntology onto) {
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		for (OWLOntology o : onto.getImportsClosure()) {
+			axioms.addAll(o.getAxioms());
+		}
+		return axioms;
+	}
+	
+	/**
+	 * checks if the module extractor adds this axiom to modules whose signature contains one of its entities, 
+	 * i.e. if it declares or annotates an entity of the signature, 
+	 * or states that an individual of the signature is the same as or different from other individuals
+	 * 
+	 * @param ax
+	 * 			axiom
+	 * @param signature
+	 * 			signature of the module together with the signature of its axioms selected by locality
+	 * @return true, if the axiom is added to the module
+	 */
+	private static boolean isEnrichment(OWLAxiom ax, Set<OWLEntity> signature) {
+		if (ax instanceof OWLDeclarationAxiom) {
+			return signature.contains(((OWLDeclarationAxiom) ax).getEntity());
+		}
+		if (ax instanceof OWLAnnotationAssertionAxiom) {
+			OWLAnnotationSubject subject = ((OWLAnnotationAssertionAxiom) ax).getSubject();
+			for (OWLEntity entity : signature) {
+				if (entity.getIRI().equals(subject)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (ax instanceof OWLSameIndividualAxiom || ax instanceof OWLDifferentIndividualsAxiom) {
+			return !Collections.disjoint(((OWLNaryIndividualAxiom) ax).getIndividuals(), signature);
+		}
+		return false;
+	}
+	
+	/**
+	 * gets the axioms the module extractor adds to modules whose signature contains this entity 
+	 * (see {@link #isEnrichment})
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param entity
+	 * 			entity of the signature
+	 * @return declarations and annotations of the entity, 
+	 * 			and axioms stating that it is the same as or different from other individuals
+	 */
+	private static Set<OWLAxiom> getEnrichment(OWLOntology onto, OWLEntity entity) {
+		Set<OWLAxiom> enrichment = new HashSet<OWLAxiom>();
+		for (OWLOntology o : onto.getImportsClosure()) {
+			enrichment.addAll(o.getDeclarationAxioms(entity));
+			enrichment.addAll(o.getAnnotationAssertionAxioms(entity.getIRI()));
+			if (entity.isOWLNamedIndividual()) {
+				enrichment.addAll(o.getSameIndividualAxioms(entity.asOWLNamedIndividual()));
+				enrichment.addAll(o.getDifferentIndividualAxioms(entity.asOWLNamedIndividual()));
+			}
+		}
+		return enrichment;
+	}
+	
+	private static class ModuleKey {
+		
+		private final ModuleType moduleType;
+		private final Set<OWLEntity> signature;
+		
+		ModuleKey(ModuleType moduleType, Set<OWLEntity> signature) {
+			this.moduleType = moduleType;
+			this.signature = signature;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(moduleType, signature);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ModuleKey)) {
+				return false;
+			}
+			ModuleKey other = (ModuleKey) obj;
+			return moduleType == other.moduleType && signature.equals(other.signature);
+		}
+	}
+	
+	/**
+	 * records changes for the live modules of the changed ontology, 
+	 * and invalidates live modules of ontologies importing it
+	 */
+	private static class ModuleMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			Set<OWLOntology> changed = Collections.newSetFromMap(new IdentityHashMap<OWLOntology, Boolean>());
+			for (OWLOntologyChange change : changes) {
+				Cache<ModuleKey, LiveModule> ontoModules = modules.get(change.getOntology());
+				if (ontoModules != null) {
+					for (LiveModule live : ontoModules.asMap().values()) {
+						live.record(change);
+					}
+				}
+				changed.add(change.getOntology());
+			}
+			for (Map.Entry<OWLOntology, Cache<ModuleKey, LiveModule>> entry : modules.entrySet()) {
+				for (OWLOntology imported : entry.getKey().getImportsClosure()) {
+					if (imported != entry.getKey() && changed.contains(imported)) {
+						for (LiveModule live : entry.getValue().asMap().values()) {
+							live.invalidate();
+						}
+						break;
+					}
+				}
+			}
+		}
+	}
+
+}
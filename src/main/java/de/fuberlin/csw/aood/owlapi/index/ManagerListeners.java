@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.Config;
+
+/**
+ * Registers the change listeners which keep the aspect indexes up to date.
+ * Every listener is registered at most once per ontology manager.
+ * 
+ * <p>Indexes register their listener when they are first built. 
+ * A listener registered while another thread is applying changes may miss some of them, 
+ * so callers about to change ontologies concurrently register all listeners first (see registerAll()).
+ */
+public final class ManagerListeners {
+	
+	/** managers mapped to the listeners already registered on them (weak, identity based) */
+	private static final Map<OWLOntologyManager, Map<OWLOntologyChangeListener, Boolean>> registered = 
+			new MapMaker().weakKeys().makeMap();
+	
+	private static final boolean maintainAxiomCounts;
+	private static final boolean indexAnonymousIndividuals;
+	private static final boolean indexDeclarations;
+	private static final boolean indexPropertyAssertions;
+	private static final boolean maintainModulesIncrementally;
+	
+	static {
+		maintainAxiomCounts = (boolean)Config.instance().get("maintainAxiomCounts");
+		indexAnonymousIndividuals = (boolean)Config.instance().get("indexAnonymousIndividuals");
+		indexDeclarations = (boolean)Config.instance().get("indexDeclarations");
+		indexPropertyAssertions = (boolean)Config.instance().get("indexPropertyAssertions");
+		// modules are only maintained if they are cached
+		maintainModulesIncrementally = (boolean)Config.instance().get("maintainModulesIncrementally") 
+				&& (int)Config.instance().get("moduleCacheSize") > 0;
+	}
+	
+	private ManagerListeners() {
+	}
+	
+	/**
+	 * registers this listener on this manager unless this has already been done
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 * @param listener
+	 * 			change listener to be registered
+	 */
+	public static synchronized void register(OWLOntologyManager om, OWLOntologyChangeListener listener) {
+		Map<OWLOntologyChangeListener, Boolean> listeners = registered.get(om);
+		if (listeners == null) {
+			listeners = new MapMaker().weakKeys().makeMap();
+			registered.put(om, listeners);
+		}
+		if (listeners.put(listener, Boolean.TRUE) == null) {
+			om.addOntologyChangeListener(listener);
+		}
+	}
+	
+	/**
+	 * registers the listeners of all indexes and caches used with the current configuration on this manager, 
+	 * so none of them is registered while changes are broadcast
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	public static void registerAll(OWLOntologyManager om) {
+		AspectProperties.registerListener(om);
+		AxiomKeyIndex.registerListener(om);
+		if (maintainAxiomCounts) {
+			AxiomCounts.registerListener(om);
+		}
+		if (indexAnonymousIndividuals) {
+			AnonymousIndividualIndex.registerListener(om);
+		}
+		if (indexDeclarations) {
+			DeclarationIndex.registerListener(om);
+		}
+		if (indexPropertyAssertions) {
+			PropertyAssertionIndex.registerListener(om);
+		}
+		// the revisions are also used by the cached axiom counts
+		ModuleCache.registerListener(om);
+		if (maintainModulesIncrementally) {
+			IncrementalModules.registerListener(om);
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+
+import de.fuberlin.csw.aood.owlapi.Config;
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+/**
+ * Caches extracted modules by ontology, module type, signature and ontology revision. 
+ * A change listener counts the changes of every ontology. The revision of an ontology stands for 
+ * the members of its imports closure together with their change counts, and a different closure 
+ * or count always gets a new revision, so modules of older revisions are never returned 
+ * and are evicted eventually (the cache size is bounded by the Config option moduleCacheSize).
+ * 
+ * <p>If the Config option precomputeModuleExtractors is set, the module extractor of an ontology 
+ * (which copies and prepares all axioms of the ontology) is built once per revision 
+ * and reused for all signatures, so a cache miss costs only the locality fixpoint.
+ * 
+ * <p>If the Config option maintainModulesIncrementally is set, 
+ * cached modules are kept up to date on changes (see {@link IncrementalModules}).
+ */
+public final class ModuleCache {
+	
+	private static final int moduleCacheSize;
+	private static final boolean precomputeModuleExtractors;
+	private static final boolean maintainModulesIncrementally;
+	
+	static {
+		moduleCacheSize = (int)Config.instance().get("moduleCacheSize");
+		precomputeModuleExtractors = (boolean)Config.instance().get("precomputeModuleExtractors");
+		maintainModulesIncrementally = (boolean)Config.instance().get("maintainModulesIncrementally");
+	}
+	
+	/** change counts of ontologies (weak, identity based) */
+	private static final ConcurrentMap<OWLOntology, AtomicLong> revisions = new MapMaker().weakKeys().makeMap();
+	
+	/** last revisions of imports closures by importing ontology (weak, identity based) */
+	private static final ConcurrentMap<OWLOntology, ClosureRevision> closureRevisions = new MapMaker().weakKeys().makeMap();
+	
+	/** source of closure revisions, which never returns a revision twice */
+	private static final AtomicLong nextRevision = new AtomicLong();
+	
+	private static final Cache<ModuleKey, Set<OWLAxiom>> modules = 
+			CacheBuilder.newBuilder().maximumSize(Math.max(moduleCacheSize, 0)).build();
+	
+	/** module extractors built for the current revisions of ontologies (weak, identity based) */
+	private static final ConcurrentMap<OWLOntology, PrecomputedExtractor> extractors = new MapMaker().weakKeys().makeMap();
+	
+	private static final OWLOntologyChangeListener revisionCounter = new RevisionCounter();
+	
+	private ModuleCache() {
+	}
+	
+	/**
+	 * gets the module of this ontology for this signature, extracting it if it is not cached
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param moduleType
+	 * 			type of module
+	 * @param signature
+	 * 			signature of the module (must not be modified afterwards)
+	 * @return module (unmodifiable)
+	 */
+	public static Set<OWLAxiom> getModule(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature) {
+		if (moduleCacheSize <= 0) {
+			return extract(onto, moduleType, signature);
+		}
+		if (maintainModulesIncrementally) {
+			return IncrementalModules.getModule(onto, moduleType, signature, moduleCacheSize);
+		}
+		ManagerListeners.register(onto.getOWLOntologyManager(), revisionCounter);
+		long revision = getRevision(onto);
+		ModuleKey key = new ModuleKey(onto, moduleType, signature, revision);
+		try {
+			return modules.get(key, () -> extract(onto, moduleType, signature, revision));
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * gets the revision of this ontology, which changes whenever the ontology or one of its imports changes 
+	 * (or an ontology is imported or not imported anymore). 
+	 * A revision is never reused for a different state of the imports closure.
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return current revision of this ontology and its imports
+	 */
+	public static long getRevision(OWLOntology onto) {
+		ManagerListeners.register(onto.getOWLOntologyManager(), revisionCounter);
+		Map<OWLOntology, Long> counts = new IdentityHashMap<OWLOntology, Long>();
+		for (OWLOntology o : onto.getImportsClosure()) {
+			counts.put(o, getCounter(o).get());
+		}
+		ClosureRevision last = closureRevisions.get(onto);
+		if (last != null && last.matches(counts)) {
+			return last.revision;
+		}
+		ClosureRevision current = new ClosureRevision(counts, nextRevision.incrementAndGet());
+		closureRevisions.put(onto, current);
+		return current.revision;
+	}
+	
+	/**
+	 * registers the listener keeping the revision counters up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, revisionCounter);
+	}
+	
+	private static AtomicLong getCounter(OWLOntology onto) {
+		AtomicLong counter = revisions.get(onto);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = revisions.putIfAbsent(onto, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+	
+	/**
+	 * extracts the module of this ontology for this signature
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @param moduleType
+	 * 			type of module
+	 * @param signature
+	 * 			signature of the module
+	 * @return module (unmodifiable)
+	 */
+	static Set<OWLAxiom> extract(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature) {
+		if (precomputeModuleExtractors) {
+			ManagerListeners.register(onto.getOWLOntologyManager(), revisionCounter);
+			return extract(onto, moduleType, signature, getRevision(onto));
+		}
+		SyntacticLocalityModuleExtractor extractor = 
+				new SyntacticLocalityModuleExtractor(onto.getOWLOntologyManager(), onto, moduleType);
+		return Collections.unmodifiableSet(extractor.extract(signature));
+	}
+	
+	private static Set<OWLAxiom> extract(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature, long revision) {
+		if (!precomputeModuleExtractors) {
+			SyntacticLocalityModuleExtractor extractor = 
+					new SyntacticLocalityModuleExtractor(onto.getOWLOntologyManager(), onto, moduleType);
+			return Collections.unmodifiableSet(extractor.extract(signature));
+		}
+		PrecomputedExtractor precomputed = extractors.get(onto);
+		if (precomputed == null || precomputed.revision != revision || precomputed.moduleType != moduleType) {
+			// the ontology changed since the extractor was built
+			precomputed = new PrecomputedExtractor(new SyntacticLocalityModuleExtractor(
+					onto.getOWLOntologyManager(), onto, moduleType), moduleType, revision);
+			extractors.put(onto, precomputed);
+		}
+		return Collections.unmodifiableSet(precomputed.extractor.extract(signature));
+	}
+	
+	/**
+	 * revision of an imports closure with the change counts of its members
+	 */
+	private static class ClosureRevision {
+		
+		/** members of the closure (weak, so the closure of an ontology does not keep it alive) */
+		private final WeakReference<?>[] members;
+		private final long[] counts;
+		final long revision;
+		
+		ClosureRevision(Map<OWLOntology, Long> counts, long revision) {
+			this.members = new WeakReference<?>[counts.size()];
+			this.counts = new long[counts.size()];
+			int i = 0;
+			for (Map.Entry<OWLOntology, Long> entry : counts.entrySet()) {
+				members[i] = new WeakReference<OWLOntology>(entry.getKey());
+				this.counts[i++] = entry.getValue();
+			}
+			this.revision = revision;
+		}
+		
+		/**
+		 * @return true, if the closure has the same members with the same change counts
+		 */
+		boolean matches(Map<OWLOntology, Long> currentCounts) {
+			if (currentCounts.size() != members.length) {
+				return false;
+			}
+			for (int i = 0; i < members.length; i++) {
+				Object member = members[i].get();
+				Long count = (member != null) ? currentCounts.get(member) : null;
+				if (count == null || count != counts[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * module extractor prepared for a revision of an ontology
+	 */
+	private static class PrecomputedExtractor {
+		
+		final SyntacticLocalityModuleExtractor extractor;
+		final ModuleType moduleType;
+		final long revision;
+		
+		PrecomputedExtractor(SyntacticLocalityModuleExtractor extractor, ModuleType moduleType, long revision) {
+			this.extractor = extractor;
+			this.moduleType = moduleType;
+			this.revision = revision;
+		}
+	}
+	
+	/**
+	 * key of a cached module, referencing the ontology weakly
+	 */
+	private static class ModuleKey {
+		
+		private final WeakReference<OWLOntology> onto;
+		private final int ontoHash;
+		private final ModuleType moduleType;
+		private final Set<OWLEntity> signature;
+		private final long revision;
+		private final int hash;
+		
+		ModuleKey(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature, long revision) {
+			this.onto = new WeakReference<OWLOntology>(onto);
+			this.ontoHash = System.identityHashCode(onto);
+			this.moduleType = moduleType;
+			this.signature = signature;
+			this.revision = revision;
+			this.hash = 31 * (31 * (31 * ontoHash + moduleType.hashCode()) + signature.hashCode()) + Long.hashCode(revision);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ModuleKey)) {
+				return false;
+			}
+			ModuleKey other = (ModuleKey) obj;
+			OWLOntology o = onto.get();
+			return o != null && o == other.onto.get() 
+					&& hash == other.hash
+					&& revision == other.revision 
+					&& moduleType == other.moduleType 
+					&& signature.equals(other.signature);
+		}
+	}
+	
+	/**
+	 * increases the revision of every changed ontology 
+	 * (precomputed extractors of older revisions are rebuilt on their next use)
+	 */
+	private static class RevisionCounter implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				AtomicLong counter = revisions.get(change.getOntology());
+				if (counter != null) {
+					counter.incrementAndGet();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLPropertyAssertionAxiom;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Per-ontology index from individuals to the (negative) object and data property assertions 
+ * they are the subject of, each stored as property, value and aspect signature class 
+ * (see {@link AspectClasses}).
+ * 
+ * <p>The index is built on first use and kept up to date by a change listener 
+ * registered on the manager of the ontology. It is rebuilt together with the aspect index.
+ */
+public final class PropertyAssertionIndex {
+	
+	/** indexes of ontologies (weak, identity based keys) */
+	private static final Map<OWLOntology, PropertyAssertionIndex> indexes = new MapMaker().weakKeys().makeMap();
+	
+	/** keeps all indexes in sync with changes of their ontologies */
+	private static final OWLOntologyChangeListener maintainer = new IndexMaintainer();
+	
+	/** types of indexed axioms */
+	private static final List<AxiomType<?>> ASSERTION_TYPES = Arrays.<AxiomType<?>>asList(
+			AxiomType.OBJECT_PROPERTY_ASSERTION, AxiomType.NEGATIVE_OBJECT_PROPERTY_ASSERTION, 
+			AxiomType.DATA_PROPERTY_ASSERTION, AxiomType.NEGATIVE_DATA_PROPERTY_ASSERTION);
+	
+	private static final Assertion[] NO_ASSERTIONS = new Assertion[0];
+	
+	/** aspect index the classes of axioms are taken from */
+	private final AspectIndex index;
+	/** individuals mapped to the property assertions with this subject (arrays are never modified) */
+	private final Map<OWLIndividual, Assertion[]> assertions = new HashMap<OWLIndividual, Assertion[]>();
+	
+	private PropertyAssertionIndex(OWLOntology onto, AspectIndex index) {
+		this.index = index;
+		for (AxiomType<?> axiomType : ASSERTION_TYPES) {
+			for (OWLAxiom ax : onto.getAxioms(axiomType)) {
+				add((OWLPropertyAssertionAxiom<?, ?>) ax);
+			}
+		}
+	}
+	
+	/**
+	 * gets the property assertion index of this ontology, building it if needed
+	 * 
+	 * @param onto
+	 * 			ontology
+	 * @return property assertion index of this ontology
+	 */
+	public static PropertyAssertionIndex get(OWLOntology onto) {
+		AspectIndex index = AspectIndex.get(onto);
+		PropertyAssertionIndex assertionIndex = indexes.get(onto);
+		// the classes of axioms change if the aspect index is rebuilt
+		if (assertionIndex == null || assertionIndex.index != index) {
+			ManagerListeners.register(onto.getOWLOntologyManager(), maintainer);
+			assertionIndex = new PropertyAssertionIndex(onto, index);
+			indexes.put(onto, assertionIndex);
+		}
+		return assertionIndex;
+	}
+	
+	/**
+	 * registers the listener keeping the property assertion indexes up to date on this manager
+	 * 
+	 * @param om
+	 * 			ontology manager
+	 */
+	static void registerListener(OWLOntologyManager om) {
+		ManagerListeners.register(om, maintainer);
+	}
+	
+	/**
+	 * puts the properties and values of all assertions of this type with this subject 
+	 * which satisfy this predicate into this multimap builder
+	 * 
+	 * @param subject
+	 * 			subject of the assertions
+	 * @param axiomType
+	 * 			type of the assertions, one of the (negative) object and data property assertion types
+	 * @param predicate
+	 * 			compiled aspect expression
+	 * @param values
+	 * 			builder of a multimap from properties to values of the assertion type
+	 */
+	@SuppressWarnings("unchecked")
+	public <P, V> void putValues(OWLIndividual subject, AxiomType<?> axiomType, AspectPredicate predicate, 
+			ImmutableListMultimap.Builder<P, V> values) {
+		Assertion[] subjectAssertions;
+		synchronized (this) {
+			subjectAssertions = assertions.getOrDefault(subject, NO_ASSERTIONS);
+		}
+		for (Assertion assertion : subjectAssertions) {
+			if (assertion.axiomType == axiomType && predicate.testClass(assertion.classId)) {
+				values.put((P) assertion.property, (V) assertion.value);
+			}
+		}
+	}
+	
+	private synchronized void add(OWLPropertyAssertionAxiom<?, ?> ax) {
+		Assertion[] subjectAssertions = assertions.getOrDefault(ax.getSubject(), NO_ASSERTIONS);
+		subjectAssertions = Arrays.copyOf(subjectAssertions, subjectAssertions.length + 1);
+		subjectAssertions[subjectAssertions.length - 1] = new Assertion(ax, index.getClassId(ax));
+		assertions.put(ax.getSubject(), subjectAssertions);
+	}
+	
+	private synchronized void remove(OWLPropertyAssertionAxiom<?, ?> ax) {
+		Assertion[] subjectAssertions = assertions.get(ax.getSubject());
+		if (subjectAssertions == null) {
+			return;
+		}
+		for (int i = 0; i < subjectAssertions.length; i++) {
+			if (subjectAssertions[i].axiom.equals(ax)) {
+				if (subjectAssertions.length == 1) {
+					assertions.remove(ax.getSubject());
+				} else {
+					Assertion[] remaining = new Assertion[subjectAssertions.length - 1];
+					System.arraycopy(subjectAssertions, 0, remaining, 0, i);
+					System.arraycopy(subjectAssertions, i + 1, remaining, i, remaining.length - i);
+					assertions.put(ax.getSubject(), remaining);
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * property assertion with the aspect signature class of its axiom
+	 */
+	private static final class Assertion {
+		
+		private final OWLAxiom axiom;
+		private final AxiomType<?> axiomType;
+		private final OWLObject property;
+		private final OWLObject value;
+		private final int classId;
+		
+		Assertion(OWLPropertyAssertionAxiom<?, ?> axiom, int classId) {
+			this.axiom = axiom;
+			this.axiomType = axiom.getAxiomType();
+			this.property = axiom.getProperty();
+			this.value = axiom.getObject();
+			this.classId = classId;
+		}
+	}
+	
+	/**
+	 * updates the indexes of changed ontologies
+	 */
+	private static class IndexMaintainer implements OWLOntologyChangeListener {
+		
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			for (OWLOntologyChange change : changes) {
+				PropertyAssertionIndex assertionIndex = indexes.get(change.getOntology());
+				if (assertionIndex != null && change.isAxiomChange() 
+						&& change.getAxiom() instanceof OWLPropertyAssertionAxiom) {
+					OWLPropertyAssertionAxiom<?, ?> ax = (OWLPropertyAssertionAxiom<?, ?>) change.getAxiom();
+					if (change.isAddAxiom()) {
+						assertionIndex.add(ax);
+					} else {
+						assertionIndex.remove(ax);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -32,7 +32,13 @@ import org.junit.runners.Suite.SuiteClasses;
 	ExtractAxiomsTest.class, 
 	ExtractEntitiesTest.class,
 	ExtractAnonIndTest.class,
-	ExtractMultimapsTest.class
+	ExtractMultimapsTest.class,
+	AspectSubPropertyTest.class,
+	AspectQueriesTest.class,
+	AspectTransactionTest.class,
+	ModuleCacheTest.class,
+	ChangeListTest.class,
+	ConcurrentIndexTest.class
 })
 public class AllTests {
 
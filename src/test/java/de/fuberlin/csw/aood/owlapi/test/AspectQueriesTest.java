@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLLogicalAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import de.fuberlin.csw.aood.owlapi.AspectQueries;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+
+public class AspectQueriesTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/queries";
+	static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	
+	OWLOntologyManager om = create();
+	
+	OWLOntology onto;
+	OWLClass painting, artwork, thing;
+	OWLAxiom withAspect, withoutAspect, missing;
+	OWLAxiom withAspectAnnotated;
+	AspectPredicate predicate;
+	
+	@Before
+	public void createOntology() throws OWLOntologyCreationException {
+		onto = om.createOntology(IRI.create(base));
+		
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		thing = df.getOWLClass(IRI.create(base + "#Thing"));
+		withAspect = df.getOWLSubClassOfAxiom(painting, artwork);
+		withoutAspect = df.getOWLSubClassOfAxiom(artwork, thing);
+		missing = df.getOWLSubClassOfAxiom(painting, thing);
+		withAspectAnnotated = withAspect.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(isPointcutOf, IRI.create(wikipedia))));
+		
+		om.addAxiom(onto, withAspectAnnotated);
+		om.addAxiom(onto, withoutAspect);
+		predicate = AspectQueries.predicate(onto, wikipedia);
+	}
+	
+	@Test
+	public void testStreamAxiomsWithAspect() {
+		assertEquals(Collections.singleton(withAspect), 
+				AspectQueries.axioms(onto, AxiomType.SUBCLASS_OF, Imports.INCLUDED, predicate).collect(Collectors.toSet()));
+		assertEquals(1, AspectQueries.referencingAxioms(onto, artwork, Imports.INCLUDED, predicate).count());
+		assertEquals(0, AspectQueries.referencingAxioms(onto, thing, Imports.INCLUDED, predicate).count());
+	}
+	
+	@Test
+	public void testStreamReadsVersionPinnedOnCreation() throws ReflectiveOperationException {
+		// versions are only pinned with snapshot reads
+		Function<OWLOntology, Stream<OWLLogicalAxiom>> pinned = newInstance(
+				configuredClassLoader(Collections.singletonMap("snapshotReads", true)), WikipediaLogicalAxioms.class);
+		Stream<OWLLogicalAxiom> axioms = pinned.apply(onto);
+		om.removeAxiom(onto, withAspectAnnotated);
+		
+		assertEquals(Collections.singletonList(withAspect), axioms.limit(2).collect(Collectors.toList()));
+		assertEquals(0, pinned.apply(onto).count());
+		assertEquals(0, AspectQueries.logicalAxioms(onto, Imports.EXCLUDED, predicate).count());
+	}
+	
+	@Test
+	public void testContainsAxiomsWithAspect() {
+		BitSet contained = AspectQueries.containsAll(onto, Arrays.asList(missing, withAspect, withoutAspect), 
+				Imports.EXCLUDED, AxiomAnnotations.CONSIDER_AXIOM_ANNOTATIONS, predicate);
+		assertEquals(BitSet.valueOf(new long[] {0b010}), contained);
+		assertTrue(AspectQueries.containsAny(onto, Arrays.asList(missing, withAspect), 
+				Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+		assertFalse(AspectQueries.containsAny(onto, Arrays.asList(missing, withoutAspect), 
+				Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+	}
+	
+	@Test
+	public void testContainsNoAxioms() {
+		assertTrue(AspectQueries.containsAll(onto, Collections.<OWLAxiom>emptyList(), 
+				Imports.INCLUDED, AxiomAnnotations.CONSIDER_AXIOM_ANNOTATIONS, predicate).isEmpty());
+		assertFalse(AspectQueries.containsAny(onto, Collections.<OWLAxiom>emptyList(), 
+				Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+	}
+	
+	@Test
+	public void testQueriesWithImports() throws OWLOntologyCreationException {
+		OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+		OWLAxiom importedAxiom = df.getOWLSubClassOfAxiom(thing, painting);
+		om.addAxiom(imported, importedAxiom.getAnnotatedAxiom(withAspectAnnotated.getAnnotations()));
+		om.applyChange(new AddImport(onto, df.getOWLImportsDeclaration(IRI.create(base + "/imported"))));
+		
+		assertEquals(Collections.singleton(withAspect), 
+				AspectQueries.axioms(onto, Imports.EXCLUDED, predicate).collect(Collectors.toSet()));
+		assertEquals(new HashSet<OWLAxiom>(Arrays.asList(withAspect, importedAxiom)), 
+				AspectQueries.axioms(onto, Imports.INCLUDED, predicate).collect(Collectors.toSet()));
+		assertEquals(BitSet.valueOf(new long[] {0b11}), AspectQueries.containsAll(onto, Arrays.asList(withAspect, importedAxiom), 
+				Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+		assertEquals(BitSet.valueOf(new long[] {0b01}), AspectQueries.containsAll(onto, Arrays.asList(withAspect, importedAxiom), 
+				Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+		assertFalse(AspectQueries.containsAny(onto, Collections.singleton(importedAxiom), 
+				Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+	}
+	
+	@Test
+	public void testSnapshotIsNotAffectedByChanges() {
+		AxiomKeyIndex.Snapshot snapshot = AspectQueries.snapshot(onto);
+		om.removeAxiom(onto, withAspectAnnotated);
+		
+		assertEquals(Collections.singleton(withAspect), snapshot.getAxioms(AxiomType.SUBCLASS_OF, predicate));
+		assertTrue(snapshot.containsAxiom(withAspect, predicate));
+		assertFalse(AspectQueries.snapshot(onto).containsAxiom(withAspect, predicate));
+		assertTrue(AspectQueries.snapshot(onto).getVersion() > snapshot.getVersion());
+	}
+	
+	/**
+	 * streams the logical axioms with the aspect Wikipedia, using the options of the class loader it is loaded with
+	 */
+	public static class WikipediaLogicalAxioms implements Function<OWLOntology, Stream<OWLLogicalAxiom>> {
+		
+		@Override
+		public Stream<OWLLogicalAxiom> apply(OWLOntology onto) {
+			return AspectQueries.logicalAxioms(onto, Imports.EXCLUDED, AspectQueries.predicate(onto, wikipedia));
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+
+public class AspectSubPropertyTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/subproperties";
+	static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	
+	OWLOntologyManager om = create();
+	OWLOntology onto = null;
+	
+	@Test
+	public void testAspectAttachedViaSubPropertyOfIsPointcutOf() throws OWLOntologyCreationException {
+		onto = om.createOntology(IRI.create(base));
+		
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		OWLAnnotationProperty isSourceOf = df.getOWLAnnotationProperty(IRI.create(base + "#isSourceOf"));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLAxiom ax = df.getOWLSubClassOfAxiom(painting, artwork);
+		
+		// aspect is attached using a property which is not (yet) known as sub-property of isPointcutOf
+		om.addAxiom(onto, ax.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(isSourceOf, IRI.create(wikipedia)))));
+		assertFalse(containsUnderWikipedia(ax));
+		
+		// now the axiom has the aspect
+		om.addAxiom(onto, df.getOWLSubAnnotationPropertyOfAxiom(isSourceOf, isPointcutOf));
+		assertTrue(containsUnderWikipedia(ax));
+		
+		// removing the axiom under the aspect removes the annotation using the sub-property
+		removeUnderWikipedia(ax);
+		assertFalse(containsUnderWikipedia(ax));
+		assertTrue(onto.containsAxiom(ax));
+	}
+	
+	@Test
+	public void testAspectPropertyWithLiteralValueIsRegularAnnotation() throws OWLOntologyCreationException {
+		onto = om.createOntology(IRI.create(base));
+		
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		OWLAnnotationProperty isSourceOf = df.getOWLAnnotationProperty(IRI.create(base + "#isSourceOf"));
+		om.addAxiom(onto, df.getOWLSubAnnotationPropertyOfAxiom(isSourceOf, isPointcutOf));
+		OWLAnnotation aspect = df.getOWLAnnotation(isSourceOf, IRI.create(wikipedia));
+		OWLAnnotation literal = df.getOWLAnnotation(isSourceOf, df.getOWLLiteral("Wikipedia"));
+		OWLAnnotation nested = df.getOWLAnnotation(isPointcutOf, IRI.create(wikipedia), 
+				Collections.singleton(df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("checked"))));
+		
+		// the same annotations are regular ones, with or without the ontology
+		Set<OWLAnnotation> annotations = new HashSet<OWLAnnotation>(Arrays.asList(aspect, literal, nested));
+		assertEquals(new HashSet<OWLAnnotation>(Arrays.asList(literal, nested)), BasicHelper.findRegularAnnotations(onto, annotations));
+		assertFalse(BasicHelper.isAspectAnnotation(literal, df));
+		assertFalse(BasicHelper.isAspectAnnotation(nested, df));
+		assertTrue(BasicHelper.isAspectAnnotation(df.getOWLAnnotation(isPointcutOf, IRI.create(wikipedia)), df));
+	}
+	
+	@OWLAspectAnd({wikipedia})
+	private boolean containsUnderWikipedia(OWLAxiom ax) {
+		return onto.containsAxiom(ax);
+	}
+	
+	@OWLAspectAnd({wikipedia})
+	private void removeUnderWikipedia(OWLAxiom ax) {
+		om.removeAxiom(onto, ax);
+	}
+
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import de.fuberlin.csw.aood.owlapi.AspectTransaction;
+import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+
+public class AspectTransactionTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/transaction";
+	static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	static final String spiegel = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
+	
+	OWLOntologyManager om = create();
+	
+	@OWLAspectAnd({wikipedia})
+	void wikipediaAspects() {}
+	
+	@OWLAspectAnd({spiegel})
+	void spiegelAspects() {}
+	
+	@Test
+	public void testCommitAndRollback() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLClass thing = df.getOWLClass(IRI.create(base + "#Thing"));
+		OWLAxiom added = df.getOWLSubClassOfAxiom(painting, artwork);
+		OWLAxiom retagged = df.getOWLSubClassOfAxiom(artwork, thing);
+		om.addAxiom(onto, retagged.getAnnotatedAxiom(aspect(spiegel)));
+		Set<OWLAxiom> before = new HashSet<OWLAxiom>(onto.getAxioms());
+		
+		AspectTransaction tx = new AspectTransaction(onto, aspects("wikipediaAspects"));
+		tx.add(added);
+		tx.retag(retagged, aspects("spiegelAspects"));
+		assertFalse(onto.containsAxiomIgnoreAnnotations(added));
+		
+		tx.commit();
+		assertTrue(tx.isCommitted());
+		assertTrue(onto.containsAxiom(added.getAnnotatedAxiom(aspect(wikipedia))));
+		assertTrue(onto.containsAxiom(retagged.getAnnotatedAxiom(aspect(wikipedia))));
+		assertFalse(onto.containsAxiom(retagged.getAnnotatedAxiom(aspect(spiegel))));
+		
+		tx.rollback();
+		assertEquals(before, onto.getAxioms());
+	}
+	
+	@Test
+	public void testFailedCommitLeavesOntologyUnchanged() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLAxiom added = df.getOWLSubClassOfAxiom(painting, artwork);
+		OWLAxiom removed = df.getOWLSubClassOfAxiom(artwork, painting);
+		om.addAxiom(onto, removed.getAnnotatedAxiom(aspect(spiegel)));
+		Set<OWLAxiom> before = new HashSet<OWLAxiom>(onto.getAxioms());
+		
+		AspectTransaction tx = new AspectTransaction(onto, aspects("wikipediaAspects"));
+		tx.add(added);
+		// associated with other aspects only
+		tx.remove(removed);
+		try {
+			tx.commit();
+			fail("commit should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertFalse(tx.isCommitted());
+		assertEquals(before, onto.getAxioms());
+	}
+	
+	@Test
+	public void testFailedRevertIsSuppressed() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLAxiom added = df.getOWLSubClassOfAxiom(painting, artwork);
+		OWLAxiom removed = df.getOWLSubClassOfAxiom(artwork, painting);
+		// changes of the annotation property hierarchy are applied before the next change is checked
+		OWLAxiom subProperty = df.getOWLSubAnnotationPropertyOfAxiom(df.getOWLAnnotationProperty(IRI.create(base + "#source")), 
+				df.getOWLAnnotationProperty(isPointcutOfPropertyIRI));
+		om.addAxiom(onto, removed.getAnnotatedAxiom(aspect(spiegel)));
+		// another writer removes the added axiom as soon as it is applied
+		OWLAxiom addedWithAspect = added.getAnnotatedAxiom(aspect(wikipedia));
+		om.addOntologyChangeListener(changes -> {
+			for (OWLOntologyChange change : changes) {
+				if (change.isAddAxiom() && change.getAxiom().equals(addedWithAspect)) {
+					om.removeAxiom(onto, addedWithAspect);
+				}
+			}
+		});
+		
+		AspectTransaction tx = new AspectTransaction(onto, aspects("wikipediaAspects"));
+		tx.add(added);
+		tx.add(subProperty);
+		// associated with other aspects only
+		tx.remove(removed);
+		try {
+			tx.commit();
+			fail("commit should fail");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().startsWith("Axiom is not associated"));
+			assertEquals(1, e.getSuppressed().length);
+		}
+		assertFalse(tx.isCommitted());
+		// the changes could not be reverted, and are not reverted by a rollback either
+		assertTrue(onto.containsAxiomIgnoreAnnotations(subProperty));
+		tx.rollback();
+		assertTrue(onto.containsAxiomIgnoreAnnotations(subProperty));
+	}
+	
+	@Test
+	public void testChainedRetag() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLClass thing = df.getOWLClass(IRI.create(base + "#Thing"));
+		OWLAxiom added = df.getOWLSubClassOfAxiom(painting, artwork);
+		OWLAxiom retagged = df.getOWLSubClassOfAxiom(artwork, thing);
+		om.addAxiom(onto, retagged.getAnnotatedAxiom(aspect(wikipedia)));
+		Set<OWLAxiom> before = new HashSet<OWLAxiom>(onto.getAxioms());
+		
+		AspectTransaction tx = new AspectTransaction(onto, aspects("spiegelAspects"));
+		// the axiom added by this transaction is re-tagged and removed again
+		tx.add(added);
+		tx.retag(added, aspects("spiegelAspects"));
+		tx.remove(added);
+		// re-tagged twice
+		tx.retag(retagged, aspects("wikipediaAspects"));
+		tx.retag(retagged, aspects("spiegelAspects"));
+		tx.commit();
+		// removing the aspect keeps the axiom itself
+		assertEquals(Collections.singleton(added), onto.getAxiomsIgnoreAnnotations(added));
+		assertEquals(Collections.singleton(retagged.getAnnotatedAxiom(aspect(spiegel))), 
+				onto.getAxiomsIgnoreAnnotations(retagged));
+		
+		tx.rollback();
+		assertFalse(tx.isCommitted());
+		assertEquals(before, onto.getAxioms());
+	}
+	
+	@Test
+	public void testRollbackAfterLaterChangeFails() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base));
+		OWLClass painting = df.getOWLClass(IRI.create(base + "#Painting"));
+		OWLClass artwork = df.getOWLClass(IRI.create(base + "#Artwork"));
+		OWLClass thing = df.getOWLClass(IRI.create(base + "#Thing"));
+		OWLAxiom added = df.getOWLSubClassOfAxiom(painting, artwork);
+		OWLAxiom other = df.getOWLSubClassOfAxiom(artwork, thing);
+		
+		AspectTransaction tx = new AspectTransaction(onto, aspects("wikipediaAspects"));
+		tx.add(added);
+		tx.add(other);
+		tx.commit();
+		// a later writer removes one of the added axioms
+		om.removeAxiom(onto, added.getAnnotatedAxiom(aspect(wikipedia)));
+		Set<OWLAxiom> after = new HashSet<OWLAxiom>(onto.getAxioms());
+		
+		try {
+			tx.rollback();
+			fail("rollback should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertTrue(tx.isCommitted());
+		assertEquals(after, onto.getAxioms());
+		
+		// the axiom is back, so the transaction can be reverted
+		om.addAxiom(onto, added.getAnnotatedAxiom(aspect(wikipedia)));
+		tx.rollback();
+		assertTrue(onto.getAxioms().isEmpty());
+	}
+	
+	private Set<OWLAnnotation> aspect(String aspectIRI) {
+		return Collections.singleton(df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(aspectIRI)));
+	}
+	
+	private Annotation aspects(String methodName) throws NoSuchMethodException {
+		return getClass().getDeclaredMethod(methodName).getAnnotation(OWLAspectAnd.class);
+	}
+
+}
@@ -19,15 +19,29 @@ package de.fuberlin.csw.aood.owlapi.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.parameters.Imports;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomCounts;
 
 public class AxiomCountTest extends BaseTest {
 		
@@ -96,4 +110,94 @@ public class AxiomCountTest extends BaseTest {
 			assertEquals(count4, count4Correct);
 	  }
 	  
+	  @Test
+	  @OWLAspectAnd({
+		  "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia"
+	  })
+	  public void testCachedAxiomCountFollowsChanges() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			OWLOntology onto = loadAdvisedOntologyWithAspects(om); 
+			assertNotNull(onto);
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/testpaintings";
+			
+			// counted without the filtered set, but of the same size
+			int count = onto.getAxiomCount();
+			assertEquals(onto.getAxioms().size(), count);
+			assertEquals(count, onto.getAxiomCount());
+			assertEquals(onto.getLogicalAxioms().size(), onto.getLogicalAxiomCount());
+			assertEquals(onto.getAxioms(AxiomType.SUBCLASS_OF).size(), onto.getAxiomCount(AxiomType.SUBCLASS_OF));
+			
+			// counts of an older revision are not returned
+			OWLAxiom ax = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			om.addAxiom(onto, ax);
+			int added = onto.getAxiomCount();
+			assertTrue(added > count);
+			assertEquals(onto.getAxioms().size(), added);
+			assertEquals(onto.getLogicalAxioms().size(), onto.getLogicalAxiomCount());
+			assertEquals(onto.getAxioms(AxiomType.SUBCLASS_OF).size(), onto.getAxiomCount(AxiomType.SUBCLASS_OF));
+			
+			om.removeAxiom(onto, ax);
+			assertEquals(count, onto.getAxiomCount());
+			assertEquals(onto.getAxioms(AxiomType.SUBCLASS_OF).size(), onto.getAxiomCount(AxiomType.SUBCLASS_OF));
+	  }
+	  
+	  @Test
+	  public void testMaintainedCountsMatchScannedCounts() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/counts";
+			OWLOntology onto = om.createOntology(IRI.create(base));
+			String[] aspects = {base + "#A0", base + "#A1", base + "#A2"};
+			List<AspectPredicate> predicates = new ArrayList<AspectPredicate>();
+			predicates.add(AspectPredicate.of(new String[][] {{aspects[0]}}, df));
+			predicates.add(AspectPredicate.of(new String[][] {{aspects[0], aspects[1]}}, df));
+			predicates.add(AspectPredicate.of(new String[][] {{aspects[1]}, {aspects[2]}}, df));
+			
+			Random random = new Random(13);
+			List<OWLAxiom> added = new ArrayList<OWLAxiom>();
+			// counters are built before the changes and maintained while applying them
+			AxiomCounts.get(onto);
+			for (int i = 0; i < 400; i++) {
+				if (!added.isEmpty() && random.nextInt(4) == 0) {
+					om.removeAxiom(onto, added.remove(random.nextInt(added.size())));
+					continue;
+				}
+				OWLClass sub = df.getOWLClass(IRI.create(base + "#C" + random.nextInt(40)));
+				OWLClass sup = df.getOWLClass(IRI.create(base + "#C" + random.nextInt(40)));
+				OWLAxiom ax = random.nextBoolean() ? df.getOWLSubClassOfAxiom(sub, sup) : df.getOWLDeclarationAxiom(sub);
+				Set<OWLAnnotation> annotations = new HashSet<OWLAnnotation>();
+				for (String aspect : aspects) {
+					if (random.nextInt(3) == 0) {
+						annotations.add(df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(aspect)));
+					}
+				}
+				if (random.nextInt(5) == 0) {
+					annotations.add(df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("variant " + random.nextInt(2))));
+				}
+				ax = ax.getAnnotatedAxiom(annotations);
+				om.addAxiom(onto, ax);
+				added.add(ax);
+			}
+			
+			AxiomCounts counts = AxiomCounts.get(onto);
+			for (AspectPredicate predicate : predicates) {
+				assertEquals(scannedCount(onto, onto.getAxioms(), predicate), counts.count(predicate));
+				assertEquals(scannedCount(onto, onto.getAxioms(AxiomType.SUBCLASS_OF), predicate), 
+						counts.count(predicate, AxiomType.SUBCLASS_OF));
+				assertEquals(scannedCount(onto, onto.getLogicalAxioms(), predicate), counts.countLogical(predicate));
+			}
+			assertEquals(0, counts.count(predicates.get(0), AxiomType.DISJOINT_CLASSES));
+	  }
+	  
+	  private int scannedCount(OWLOntology onto, Set<? extends OWLAxiom> axioms, AspectPredicate predicate) {
+		  AspectIndex index = AspectIndex.get(onto);
+		  Set<OWLAxiom> matching = new HashSet<OWLAxiom>();
+		  for (OWLAxiom ax : axioms) {
+			  if (index.matches(ax, predicate)) {
+				  matching.add(ax.getAxiomWithoutAnnotations());
+			  }
+		  }
+		  return matching.size();
+	  }
+	  
 }
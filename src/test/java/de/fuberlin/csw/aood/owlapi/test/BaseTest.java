@@ -18,6 +18,11 @@
 package de.fuberlin.csw.aood.owlapi.test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.Properties;
 
 import javax.annotation.Nonnull;
 
@@ -34,6 +39,8 @@ import org.semanticweb.owlapi.util.AutoIRIMapper;
 import org.semanticweb.owlapi.util.PriorityCollection;
 import org.semanticweb.owlapi.util.SimpleIRIMapper;
 
+import com.google.common.io.ByteStreams;
+
 public abstract class BaseTest {
 	
 	// ------------------------- TEST SETUP --------------------------------------
@@ -149,4 +156,70 @@ public abstract class BaseTest {
     	return om.loadOntology(ADVISED_ONTO_IRI);
     }
     
+    /**
+     * creates a class loader loading the classes of this library and of the tests again, 
+     * so they read these options instead of the default options (options are read once per class)
+     * 
+     * @param options
+     * 			Config options to be changed
+     * @return class loader with its own Config instance
+     */
+    public static ClassLoader configuredClassLoader(Map<String, ?> options) throws ReflectiveOperationException {
+    	ClassLoader loader = new ConfiguredClassLoader(BaseTest.class.getClassLoader());
+    	Properties config = (Properties) loader.loadClass("de.fuberlin.csw.aood.owlapi.Config").getMethod("instance").invoke(null);
+    	config.putAll(options);
+    	return loader;
+    }
+    
+    /**
+     * creates an instance of this class as loaded by this class loader
+     * 
+     * @param loader
+     * 			class loader, see {@link #configuredClassLoader(Map)}
+     * @param type
+     * 			class with a constructor without parameters
+     * @return new instance
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(ClassLoader loader, Class<T> type) throws ReflectiveOperationException {
+    	Constructor<?> constructor = loader.loadClass(type.getName()).getDeclaredConstructor();
+    	constructor.setAccessible(true);
+    	return (T) constructor.newInstance();
+    }
+    
+    /**
+     * loads the classes of the library and of the tests itself instead of delegating to its parent
+     */
+    private static class ConfiguredClassLoader extends ClassLoader {
+    	
+    	ConfiguredClassLoader(ClassLoader parent) {
+    		super(parent);
+    	}
+    	
+    	@Override
+    	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    		if (!name.startsWith("de.fuberlin.csw.aood.owlapi.")) {
+    			return super.loadClass(name, resolve);
+    		}
+    		synchronized (getClassLoadingLock(name)) {
+    			Class<?> c = findLoadedClass(name);
+    			if (c == null) {
+    				try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+    					if (in == null) {
+    						throw new ClassNotFoundException(name);
+    					}
+    					byte[] bytes = ByteStreams.toByteArray(in);
+    					c = defineClass(name, bytes, 0, bytes.length);
+    				} catch (IOException e) {
+    					throw new ClassNotFoundException(name, e);
+    				}
+    			}
+    			if (resolve) {
+    				resolveClass(c);
+    			}
+    			return c;
+    		}
+    	}
+    }
+    
 }
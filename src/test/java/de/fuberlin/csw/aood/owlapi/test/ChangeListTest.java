@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.ImpendingOWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import de.fuberlin.csw.aood.owlapi.AspectQueries;
+import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.helpers.ModificationHelper;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomCounts;
+import de.fuberlin.csw.aood.owlapi.index.ModuleCache;
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+public class ChangeListTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/changes";
+	static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	static final String spiegel = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
+	
+	OWLOntologyManager om = create();
+	OWLOntology onto;
+	/** change lists broadcast by the manager */
+	List<List<? extends OWLOntologyChange>> broadcasts = new ArrayList<List<? extends OWLOntologyChange>>();
+	
+	@OWLAspectAnd({wikipedia})
+	void wikipediaAspects() {}
+	
+	@OWLAspectAnd({spiegel})
+	void spiegelAspects() {}
+	
+	@Before
+	public void createOntology() throws OWLOntologyCreationException {
+		onto = om.createOntology(IRI.create(base));
+		om.addOntologyChangeListener(new OWLOntologyChangeListener() {
+			@Override
+			public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+				broadcasts.add(new ArrayList<OWLOntologyChange>(changes));
+			}
+		});
+	}
+	
+	@Test
+	public void testChangeListIsBroadcastOnce() throws Exception {
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		for (int i = 0; i < 5; i++) {
+			changes.add(new AddAxiom(onto, subClassOf("C" + i, "D")));
+		}
+		om.addAxiom(onto, subClassOf("C0", "D").getAnnotatedAxiom(aspect(spiegel)));
+		broadcasts.clear();
+		
+		ModificationHelper.handleMultipleChanges(changes, aspects("wikipediaAspects"));
+		// four additions and the re-tag of the first axiom (removal and addition)
+		assertEquals(1, broadcasts.size());
+		assertEquals(6, broadcasts.get(0).size());
+		for (int i = 0; i < 5; i++) {
+			Set<OWLAxiom> variants = onto.getAxiomsIgnoreAnnotations(subClassOf("C" + i, "D"));
+			assertEquals(1, variants.size());
+			assertTrue(variants.iterator().next().getAnnotations().containsAll(aspect(wikipedia)));
+		}
+	}
+	
+	@Test
+	public void testSubPropertyChangeFlushesBatch() throws Exception {
+		OWLAnnotationProperty source = df.getOWLAnnotationProperty(IRI.create(base + "#source"));
+		OWLAxiom axiom = subClassOf("Painting", "Artwork");
+		om.addAxiom(onto, axiom.getAnnotatedAxiom(aspect(wikipedia)));
+		
+		// the annotation of the second axiom is an aspect only after the first change
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		changes.add(new AddAxiom(onto, df.getOWLSubAnnotationPropertyOfAxiom(source, df.getOWLAnnotationProperty(isPointcutOfPropertyIRI))));
+		changes.add(new AddAxiom(onto, axiom.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(source, IRI.create(wikipedia))))));
+		ModificationHelper.handleMultipleChanges(changes, aspects("spiegelAspects"));
+		
+		Set<OWLAxiom> variants = onto.getAxiomsIgnoreAnnotations(axiom);
+		assertEquals(1, variants.size());
+		assertTrue(variants.iterator().next().getAnnotations().containsAll(aspect(spiegel)));
+	}
+	
+	@Test
+	public void testFailedTransactionRevertsFlushedChanges() throws Exception {
+		OWLAnnotationProperty source = df.getOWLAnnotationProperty(IRI.create(base + "#source"));
+		om.addAxiom(onto, subClassOf("Painting", "Artwork").getAnnotatedAxiom(aspect(spiegel)));
+		Set<OWLAxiom> before = new HashSet<OWLAxiom>(onto.getAxioms());
+		
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		changes.add(new AddAxiom(onto, subClassOf("Thing", "Artwork")));
+		changes.add(new AddAxiom(onto, df.getOWLSubAnnotationPropertyOfAxiom(source, df.getOWLAnnotationProperty(isPointcutOfPropertyIRI))));
+		// associated with other aspects only
+		changes.add(new RemoveAxiom(onto, subClassOf("Painting", "Artwork")));
+		List<OWLOntologyChange> undoLog = new ArrayList<OWLOntologyChange>();
+		try {
+			ModificationHelper.handleTransaction(changes, Collections.nCopies(3, aspects("wikipediaAspects")), undoLog);
+			fail("transaction should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(before, onto.getAxioms());
+		assertTrue(undoLog.isEmpty());
+	}
+	
+	@Test
+	public void testRetagIsBroadcastOnce() throws Exception {
+		OWLAxiom axiom = subClassOf("Painting", "Artwork");
+		OWLAxiom tagged = axiom.getAnnotatedAxiom(aspect(spiegel));
+		om.addAxiom(onto, tagged);
+		AspectPredicate predicate = AspectQueries.predicate(onto, wikipedia);
+		assertFalse(AspectQueries.containsAny(onto, Collections.singleton(axiom), 
+				Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+		broadcasts.clear();
+		
+		ModificationHelper.handleAxiomChange(new AddAxiom(onto, axiom), aspects("wikipediaAspects"));
+		OWLAxiom retagged = onto.getAxiomsIgnoreAnnotations(axiom).iterator().next();
+		assertEquals(1, broadcasts.size());
+		assertEquals(Arrays.asList(new RemoveAxiom(onto, tagged), new AddAxiom(onto, retagged)), broadcasts.get(0));
+		assertTrue(retagged.getAnnotations().containsAll(aspect(spiegel)));
+		assertTrue(retagged.getAnnotations().containsAll(aspect(wikipedia)));
+		// the key index took over the re-tagged variant
+		assertTrue(AspectQueries.containsAny(onto, Collections.singleton(axiom), 
+				Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, predicate));
+		
+		// re-tagging with aspects the axiom already has changes nothing
+		broadcasts.clear();
+		ModificationHelper.handleAxiomChange(new AddAxiom(onto, axiom), aspects("spiegelAspects"));
+		assertTrue(broadcasts.isEmpty());
+		assertEquals(Collections.singleton(retagged), onto.getAxiomsIgnoreAnnotations(axiom));
+	}
+	
+	@Test
+	public void testDisassociationIsBroadcastOnce() throws Exception {
+		OWLAxiom axiom = subClassOf("Painting", "Artwork");
+		Set<OWLAnnotation> both = new HashSet<OWLAnnotation>(aspect(spiegel));
+		both.addAll(aspect(wikipedia));
+		OWLAxiom tagged = axiom.getAnnotatedAxiom(both);
+		om.addAxiom(onto, tagged);
+		broadcasts.clear();
+		
+		ModificationHelper.handleAxiomChange(new RemoveAxiom(onto, axiom), aspects("wikipediaAspects"));
+		OWLAxiom remaining = axiom.getAnnotatedAxiom(aspect(spiegel));
+		assertEquals(1, broadcasts.size());
+		assertEquals(Arrays.asList(new RemoveAxiom(onto, tagged), new AddAxiom(onto, remaining)), broadcasts.get(0));
+		assertEquals(Collections.singleton(remaining), onto.getAxiomsIgnoreAnnotations(axiom));
+		assertFalse(AspectQueries.containsAny(onto, Collections.singleton(axiom), Imports.EXCLUDED, 
+				AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS, AspectQueries.predicate(onto, wikipedia)));
+	}
+	
+	@Test
+	public void testParallelChangesMatchSequentialChanges() throws Exception {
+		OWLOntologyManager sequentialManager = create();
+		List<OWLOntology> parallel = Arrays.asList(om.createOntology(IRI.create(base + "/a")), om.createOntology(IRI.create(base + "/b")));
+		List<OWLOntology> sequential = Arrays.asList(sequentialManager.createOntology(IRI.create(base + "/a")), 
+				sequentialManager.createOntology(IRI.create(base + "/b")));
+		Random random = new Random(7);
+		for (int i = 0; i < 20; i++) {
+			OWLAxiom axiom = subClassOf("C" + random.nextInt(20), "C" + random.nextInt(20)).getAnnotatedAxiom(aspect(spiegel));
+			int o = random.nextInt(2);
+			om.addAxiom(parallel.get(o), axiom);
+			sequentialManager.addAxiom(sequential.get(o), axiom);
+		}
+		// maintained while the ontologies are changed concurrently
+		AspectPredicate predicate = AspectPredicate.of(new String[][] {{wikipedia}}, df);
+		Set<OWLEntity> signature = Collections.<OWLEntity>singleton(df.getOWLClass(IRI.create(base + "#C0")));
+		for (OWLOntology o : parallel) {
+			AxiomCounts.get(o);
+			ModuleCache.getModule(o, ModuleType.BOT, signature);
+		}
+		
+		List<OWLOntologyChange> parallelChanges = new ArrayList<OWLOntologyChange>();
+		List<OWLOntologyChange> sequentialChanges = new ArrayList<OWLOntologyChange>();
+		Map<OWLOntology, List<Integer>> positionsByOntology = new IdentityHashMap<OWLOntology, List<Integer>>();
+		for (int i = 0; i < 200; i++) {
+			OWLAxiom axiom = subClassOf("C" + random.nextInt(20), "C" + random.nextInt(20));
+			int o = random.nextInt(2);
+			boolean add = random.nextInt(3) > 0;
+			parallelChanges.add(add ? new AddAxiom(parallel.get(o), axiom) : new RemoveAxiom(parallel.get(o), axiom));
+			sequentialChanges.add(add ? new AddAxiom(sequential.get(o), axiom) : new RemoveAxiom(sequential.get(o), axiom));
+			if (!positionsByOntology.containsKey(parallel.get(o))) {
+				positionsByOntology.put(parallel.get(o), new ArrayList<Integer>());
+			}
+			positionsByOntology.get(parallel.get(o)).add(i);
+		}
+		// parallel changes are disabled by default, so the parallel path is called directly
+		Method handleChangesInParallel = ModificationHelper.class.getDeclaredMethod("handleChangesInParallel", 
+				List.class, Map.class, Annotation.class);
+		handleChangesInParallel.setAccessible(true);
+		List<?> parallelApplied = (List<?>) handleChangesInParallel.invoke(null, parallelChanges, positionsByOntology, aspects("wikipediaAspects"));
+		List<OWLOntologyChange> sequentialApplied = ModificationHelper.handleMultipleChanges(sequentialChanges, aspects("wikipediaAspects"));
+		
+		assertEquals(sequentialApplied.size(), parallelApplied.size());
+		for (int o = 0; o < 2; o++) {
+			OWLOntology onto = parallel.get(o);
+			assertEquals(sequential.get(o).getAxioms(), onto.getAxioms());
+			assertEquals(scannedCount(onto, predicate), AxiomCounts.get(onto).count(predicate));
+			SyntacticLocalityModuleExtractor extractor = new SyntacticLocalityModuleExtractor(om, onto, ModuleType.BOT);
+			assertEquals(extractor.extract(signature), ModuleCache.getModule(onto, ModuleType.BOT, signature));
+		}
+	}
+	
+	@Test
+	public void testFailedParallelChangesAreReverted() throws Exception {
+		OWLOntology a = om.createOntology(IRI.create(base + "/a"));
+		OWLOntology b = om.createOntology(IRI.create(base + "/b"));
+		OWLAxiom failing = subClassOf("Failing", "C0");
+		// the changes of b fail before they are applied
+		om.addImpendingOntologyChangeListener(new ImpendingOWLOntologyChangeListener() {
+			@Override
+			public void handleImpendingOntologyChanges(List<? extends OWLOntologyChange> impendingChanges) {
+				for (OWLOntologyChange change : impendingChanges) {
+					if (change.isAddAxiom() && change.getAxiom().getAxiomWithoutAnnotations().equals(failing)) {
+						throw new IllegalStateException("change of b fails");
+					}
+				}
+			}
+		});
+		
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		Map<OWLOntology, List<Integer>> positionsByOntology = new IdentityHashMap<OWLOntology, List<Integer>>();
+		positionsByOntology.put(a, new ArrayList<Integer>());
+		positionsByOntology.put(b, new ArrayList<Integer>());
+		for (int i = 0; i < 10; i++) {
+			changes.add(new AddAxiom(a, subClassOf("C" + i, "D")));
+			positionsByOntology.get(a).add(2 * i);
+			changes.add(new AddAxiom(b, i == 5 ? failing : subClassOf("C" + i, "E")));
+			positionsByOntology.get(b).add(2 * i + 1);
+		}
+		// parallel changes are disabled by default, so the parallel path is called directly
+		Method handleChangesInParallel = ModificationHelper.class.getDeclaredMethod("handleChangesInParallel", 
+				List.class, Map.class, Annotation.class);
+		handleChangesInParallel.setAccessible(true);
+		try {
+			handleChangesInParallel.invoke(null, changes, positionsByOntology, aspects("wikipediaAspects"));
+			fail("changes of b should fail");
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		// the changes of a succeeded, but are reverted
+		assertEquals(0, a.getAxiomCount());
+		assertEquals(0, b.getAxiomCount());
+		assertEquals(0, AspectQueries.axioms(a, Imports.EXCLUDED, AspectQueries.predicate(a, wikipedia)).count());
+	}
+	
+	private OWLAxiom subClassOf(String sub, String sup) {
+		return df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#" + sub)), df.getOWLClass(IRI.create(base + "#" + sup)));
+	}
+	
+	private int scannedCount(OWLOntology onto, AspectPredicate predicate) {
+		AspectIndex index = AspectIndex.get(onto);
+		Set<OWLAxiom> matching = new HashSet<OWLAxiom>();
+		for (OWLAxiom ax : onto.getAxioms()) {
+			if (index.matches(ax, predicate)) {
+				matching.add(ax.getAxiomWithoutAnnotations());
+			}
+		}
+		return matching.size();
+	}
+	
+	private Set<OWLAnnotation> aspect(String aspectIRI) {
+		return Collections.singleton(df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(aspectIRI)));
+	}
+	
+	private Annotation aspects(String methodName) throws NoSuchMethodException {
+		return getClass().getDeclaredMethod(methodName).getAnnotation(OWLAspectAnd.class);
+	}
+
+}
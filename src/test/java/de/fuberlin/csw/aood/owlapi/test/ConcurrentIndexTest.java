@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import de.fuberlin.csw.aood.owlapi.AspectQueries;
+import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.helpers.ModificationHelper;
+import de.fuberlin.csw.aood.owlapi.index.AspectIndex;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
+import de.fuberlin.csw.aood.owlapi.index.AxiomCounts;
+import de.fuberlin.csw.aood.owlapi.index.AxiomKeyIndex;
+
+public class ConcurrentIndexTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/concurrent";
+	static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	static final String spiegel = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
+	
+	OWLOntologyManager om = create();
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+	
+	@OWLAspectAnd({wikipedia})
+	void wikipediaAspects() {}
+	
+	@OWLAspectAnd({spiegel})
+	void spiegelAspects() {}
+	
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void testIndexesBuiltWhileWritingMatchOntology() throws Exception {
+		AspectPredicate predicate = AspectPredicate.of(new String[][] {{wikipedia}, {spiegel}}, df);
+		for (int round = 0; round < 10; round++) {
+			OWLOntology onto = om.createOntology(IRI.create(base + "/" + round));
+			List<OWLAxiom> axioms = new ArrayList<OWLAxiom>();
+			for (int i = 0; i < 2000; i++) {
+				OWLAxiom axiom = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#C" + i)), 
+						df.getOWLClass(IRI.create(base + "#D" + (i % 50))));
+				om.addAxiom(onto, axiom);
+				axioms.add(axiom);
+			}
+			
+			// two threads build the indexes while two others re-tag axioms
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			for (String methodName : new String[] {"wikipediaAspects", "spiegelAspects"}) {
+				Annotation annotation = aspects(methodName);
+				List<OWLAxiom> shuffled = new ArrayList<OWLAxiom>(axioms);
+				Collections.shuffle(shuffled, new Random(round));
+				tasks.add(executor.submit(() -> {
+					start.await();
+					for (OWLAxiom axiom : shuffled.subList(0, 500)) {
+						ModificationHelper.handleAxiomChange(new AddAxiom(onto, axiom), annotation);
+					}
+					return null;
+				}));
+				tasks.add(executor.submit(() -> {
+					start.await();
+					AxiomKeyIndex.get(onto);
+					AxiomCounts.get(onto);
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+			
+			AxiomKeyIndex keyIndex = AxiomKeyIndex.get(onto);
+			for (OWLAxiom axiom : axioms) {
+				assertEquals(onto.getAxiomsIgnoreAnnotations(axiom), keyIndex.getVariants(axiom));
+			}
+			assertEquals(scannedCount(onto, predicate), AxiomCounts.get(onto).count(predicate));
+		}
+	}
+	
+	@Test
+	public void testSnapshotsWhileAspectPropertiesChange() throws Exception {
+		OWLOntology onto = om.createOntology(IRI.create(base + "/properties"));
+		OWLAnnotationProperty source = df.getOWLAnnotationProperty(IRI.create(base + "#source"));
+		Set<OWLAnnotation> annotations = Collections.singleton(df.getOWLAnnotation(source, IRI.create(wikipedia)));
+		int size = 1000;
+		for (int i = 0; i < size; i++) {
+			om.addAxiom(onto, df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#C" + i)), 
+					df.getOWLClass(IRI.create(base + "#D" + (i % 50)))).getAnnotatedAxiom(annotations));
+		}
+		AspectPredicate predicate = AspectPredicate.of(new String[][] {{wikipedia}}, df);
+		OWLAnnotationProperty pointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		OWLAxiom subProperty = df.getOWLSubAnnotationPropertyOfAxiom(source, pointcutOf);
+		Annotation annotation = aspects("spiegelAspects");
+		assertEquals(0, AspectQueries.snapshot(onto).getAxioms(predicate).size());
+		
+		// readers take snapshots while a writer makes the annotations aspects and regular annotations again
+		AtomicBoolean writing = new AtomicBoolean(true);
+		List<Future<?>> readers = new ArrayList<Future<?>>();
+		for (int i = 0; i < 3; i++) {
+			readers.add(executor.submit(() -> {
+				long version = 0;
+				while (writing.get()) {
+					AxiomKeyIndex.Snapshot snapshot = AspectQueries.snapshot(onto);
+					int matching = snapshot.getAxioms(predicate).size();
+					assertTrue("partly rebuilt snapshot: " + matching, matching == 0 || matching == size);
+					assertTrue("older version published", snapshot.getVersion() >= version);
+					version = snapshot.getVersion();
+				}
+				return null;
+			}));
+		}
+		try {
+			for (int round = 0; round < 20; round++) {
+				ModificationHelper.handleAxiomChange(new AddAxiom(onto, subProperty), annotation);
+				// published before the writer returns, so readers never rebuild the index
+				assertEquals(size, AspectQueries.snapshot(onto).getAxioms(predicate).size());
+				ModificationHelper.revertChanges(Collections.<OWLOntologyChange>singletonList(new AddAxiom(onto, 
+						subProperty.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(pointcutOf, IRI.create(spiegel)))))));
+				assertEquals(0, AspectQueries.snapshot(onto).getAxioms(predicate).size());
+			}
+		} finally {
+			writing.set(false);
+		}
+		for (Future<?> reader : readers) {
+			reader.get();
+		}
+	}
+	
+	private int scannedCount(OWLOntology onto, AspectPredicate predicate) {
+		AspectIndex index = AspectIndex.get(onto);
+		Set<OWLAxiom> matching = new HashSet<OWLAxiom>();
+		for (OWLAxiom ax : onto.getAxioms()) {
+			if (index.matches(ax, predicate)) {
+				matching.add(ax.getAxiomWithoutAnnotations());
+			}
+		}
+		return matching.size();
+	}
+	
+	private Annotation aspects(String methodName) throws NoSuchMethodException {
+		return getClass().getDeclaredMethod(methodName).getAnnotation(OWLAspectAnd.class);
+	}
+
+}
@@ -20,10 +20,20 @@ package de.fuberlin.csw.aood.owlapi.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
+import org.semanticweb.owlapi.model.AddImport;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
@@ -35,9 +45,16 @@ import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
+import de.fuberlin.csw.aood.owlapi.helpers.BasicHelper;
+import de.fuberlin.csw.aood.owlapi.helpers.ContainmentHelper;
+import de.fuberlin.csw.aood.owlapi.helpers.FilteringHelper;
+import de.fuberlin.csw.aood.owlapi.index.AspectPredicate;
 
 public class ContainmentMethodsTest extends BaseTest {
 	
+	  static final String wikipedia = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	  static final String spiegel = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
+	  
 	  OWLOntology onto = null;
 
 	  @Test
@@ -154,4 +171,199 @@ public class ContainmentMethodsTest extends BaseTest {
 			
 	  }
 	  
+	  @Test
+	  public void testContainmentWithRegularAnnotations() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/containment";
+			onto = om.createOntology(IRI.create(base));
+			OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+			OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("from a newspaper"));
+			OWLAxiom axiom = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			OWLAxiom commented = axiom.getAnnotatedAxiom(Collections.singleton(comment));
+			
+			// the same axiom with a regular annotation and different aspects
+			OWLAxiom spiegelVariant = axiom.getAnnotatedAxiom(new HashSet<OWLAnnotation>(Arrays.asList(comment, 
+					df.getOWLAnnotation(isPointcutOf, IRI.create(spiegel)))));
+			OWLAxiom wikipediaVariant = axiom.getAnnotatedAxiom(Collections.singleton(
+					df.getOWLAnnotation(isPointcutOf, IRI.create(wikipedia))));
+			om.addAxiom(onto, spiegelVariant);
+			om.addAxiom(onto, wikipediaVariant);
+			
+			// similar axioms have the same regular annotations, whatever their aspects
+			assertEquals(Collections.singleton(spiegelVariant), BasicHelper.getSimilarAxioms(commented, onto));
+			assertEquals(Collections.singleton(wikipediaVariant), BasicHelper.getSimilarAxioms(axiom, onto));
+			assertEquals(Collections.emptySet(), BasicHelper.getSimilarAxioms(
+					axiom.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(df.getRDFSLabel(), df.getOWLLiteral("other")))), onto));
+			
+			testContainmentSpiegel(axiom, commented);
+			testContainmentWikipedia(axiom, commented, true);
+			
+			om.removeAxiom(onto, wikipediaVariant);
+			testContainmentSpiegel(axiom, commented);
+			om.removeAxiom(onto, spiegelVariant);
+			testContainmentWikipedia(axiom, commented, false);
+			om.removeOntology(onto);
+	  }
+	  
+	  @Test
+	  public void testAspectPropertyWithLiteralValueIsRegularAnnotation() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/containment";
+			onto = om.createOntology(IRI.create(base));
+			OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+			OWLAxiom axiom = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			// not an aspect, as its value is not an IRI
+			OWLAxiom literalVariant = axiom.getAnnotatedAxiom(Collections.singleton(
+					df.getOWLAnnotation(isPointcutOf, df.getOWLLiteral(wikipedia))));
+			om.addAxiom(onto, literalVariant);
+			
+			assertEquals(Collections.emptySet(), BasicHelper.getSimilarAxioms(axiom, onto));
+			assertEquals(Collections.singleton(literalVariant), BasicHelper.getSimilarAxioms(literalVariant, onto));
+			om.removeOntology(onto);
+	  }
+	  
+	  @OWLAspectAnd({spiegel})
+	  public void testContainmentSpiegel(OWLAxiom axiom, OWLAxiom commented) {
+			assertEquals(onto.containsAxiom(commented), true);
+			assertEquals(onto.containsAxiom(axiom), false);
+			assertEquals(onto.containsAxiom(axiom, Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), true);
+			assertEquals(EntitySearcher.containsAxiom(commented, onto, true), true);
+	  }
+	  
+	  @OWLAspectAnd({wikipedia})
+	  public void testContainmentWikipedia(OWLAxiom axiom, OWLAxiom commented, boolean contained) {
+			assertEquals(onto.containsAxiom(axiom), contained);
+			assertEquals(onto.containsAxiom(axiom, Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), contained);
+			assertEquals(onto.containsAxiom(commented), false);
+			assertEquals(EntitySearcher.containsAxiom(axiom, onto, true), contained);
+	  }
+	  
+	  @Test
+	  public void testContainmentOfAbsentAxioms() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/containment";
+			onto = om.createOntology(IRI.create(base));
+			OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+			om.applyChange(new AddImport(onto, df.getOWLImportsDeclaration(IRI.create(base + "/imported"))));
+			Set<OWLAnnotation> spiegelAnnotations = Collections.singleton(
+					df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(spiegel)));
+			OWLAxiom local = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			OWLAxiom importedOnly = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Mural")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			OWLAxiom withoutAspects = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Tempera")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			OWLAxiom absent = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Icon")), 
+					df.getOWLClass(IRI.create(base + "#Painting")));
+			om.addAxiom(onto, local.getAnnotatedAxiom(spiegelAnnotations));
+			om.addAxiom(imported, importedOnly.getAnnotatedAxiom(spiegelAnnotations));
+			om.addAxiom(onto, withoutAspects);
+			
+			testAbsentAxiomsSpiegel(local, importedOnly, withoutAspects, absent, true);
+			om.removeAxiom(onto, local.getAnnotatedAxiom(spiegelAnnotations));
+			testAbsentAxiomsSpiegel(local, importedOnly, withoutAspects, absent, false);
+			om.removeOntology(onto);
+			om.removeOntology(imported);
+	  }
+	  
+	  @OWLAspectAnd({spiegel})
+	  public void testAbsentAxiomsSpiegel(OWLAxiom local, OWLAxiom importedOnly, OWLAxiom withoutAspects, 
+			  OWLAxiom absent, boolean localContained) {
+			// axioms nowhere in the imports closure
+			assertEquals(onto.containsAxiom(absent), false);
+			assertEquals(onto.containsAxiom(absent, Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), false);
+			assertEquals(EntitySearcher.containsAxiom(absent, onto, true), false);
+			assertEquals(onto.containsAxiom(local), localContained);
+			assertEquals(onto.containsAxiom(local, Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), localContained);
+			// axioms with other regular annotations
+			OWLAxiom commented = local.getAnnotatedAxiom(Collections.singleton(
+					df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("from a newspaper"))));
+			assertEquals(onto.containsAxiom(commented), false);
+			assertEquals(onto.containsAxiom(commented, Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), localContained);
+			// axioms in the imported ontology only
+			assertEquals(onto.containsAxiom(importedOnly), false);
+			assertEquals(onto.containsAxiom(importedOnly, Imports.EXCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), false);
+			assertEquals(onto.containsAxiom(importedOnly, Imports.INCLUDED, AxiomAnnotations.CONSIDER_AXIOM_ANNOTATIONS), true);
+			assertEquals(EntitySearcher.containsAxiom(importedOnly, onto, false), false);
+			assertEquals(EntitySearcher.containsAxiom(importedOnly, onto, true), true);
+			// axioms without the current aspects
+			assertEquals(onto.containsAxiom(withoutAspects), false);
+			assertEquals(onto.containsAxiom(withoutAspects, Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS), false);
+	  }
+	  
+	  @Test
+	  public void testBatchContainmentMatchesScan() throws OWLOntologyCreationException {
+			OWLOntologyManager om = create();
+			String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/containment";
+			onto = om.createOntology(IRI.create(base));
+			OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+			om.applyChange(new AddImport(onto, df.getOWLImportsDeclaration(IRI.create(base + "/imported"))));
+			OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+			List<AspectPredicate> predicates = new ArrayList<AspectPredicate>();
+			predicates.add(AspectPredicate.of(new String[][] {{spiegel}}, df));
+			predicates.add(AspectPredicate.of(new String[][] {{spiegel}, {wikipedia}}, df));
+			
+			// axioms in both ontologies, queried bare, with a regular annotation and not contained at all
+			Random random = new Random(29);
+			List<OWLAxiom> queries = new ArrayList<OWLAxiom>();
+			OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("from a newspaper"));
+			for (int i = 0; i < 200; i++) {
+				OWLAxiom axiom = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#C" + random.nextInt(20))), 
+						df.getOWLClass(IRI.create(base + "#C" + random.nextInt(20))));
+				queries.add(axiom);
+				queries.add(axiom.getAnnotatedAxiom(Collections.singleton(comment)));
+				if (random.nextInt(3) == 0) {
+					continue;
+				}
+				Set<OWLAnnotation> annotations = new HashSet<OWLAnnotation>();
+				if (random.nextBoolean()) {
+					annotations.add(df.getOWLAnnotation(isPointcutOf, IRI.create(random.nextBoolean() ? spiegel : wikipedia)));
+				}
+				if (random.nextInt(3) == 0) {
+					annotations.add(comment);
+				}
+				om.addAxiom(random.nextBoolean() ? onto : imported, axiom.getAnnotatedAxiom(annotations));
+			}
+			
+			for (AspectPredicate predicate : predicates) {
+				for (Imports imports : Imports.values()) {
+					for (AxiomAnnotations axiomAnnotations : AxiomAnnotations.values()) {
+						BitSet contained = ContainmentHelper.containsAxioms(queries, imports, axiomAnnotations, onto, predicate);
+						for (int i = 0; i < queries.size(); i++) {
+							OWLAxiom query = queries.get(i);
+							boolean scanned = scannedContains(query, imports, axiomAnnotations, predicate);
+							assertEquals(query + " " + imports + " " + axiomAnnotations, scanned, contained.get(i));
+							assertEquals(scanned, ContainmentHelper.containsAnyAxiom(
+									Collections.singleton(query), imports, axiomAnnotations, onto, predicate));
+						}
+						assertEquals(!contained.isEmpty(), 
+								ContainmentHelper.containsAnyAxiom(queries, imports, axiomAnnotations, onto, predicate));
+					}
+				}
+			}
+			om.removeOntology(onto);
+			om.removeOntology(imported);
+	  }
+	  
+	  private boolean scannedContains(OWLAxiom query, Imports imports, AxiomAnnotations axiomAnnotations, AspectPredicate predicate) {
+			for (OWLAxiom ax : onto.getAxioms(imports)) {
+				if (!ax.getAxiomWithoutAnnotations().equals(query.getAxiomWithoutAnnotations())) {
+					continue;
+				}
+				Set<OWLAnnotation> regularAnnotations = new HashSet<OWLAnnotation>();
+				for (OWLAnnotation anno : ax.getAnnotations()) {
+					if (!anno.getProperty().getIRI().equals(isPointcutOfPropertyIRI)) {
+						regularAnnotations.add(anno);
+					}
+				}
+				if ((axiomAnnotations == AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS || regularAnnotations.equals(query.getAnnotations())) 
+						&& FilteringHelper.passAspectsTest(ax, onto, predicate)) {
+					return true;
+				}
+			}
+			return false;
+	  }
+	  
 }
@@ -20,10 +20,16 @@ package de.fuberlin.csw.aood.owlapi.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.junit.Test;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAnonymousIndividual;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
@@ -38,6 +44,8 @@ public class ExtractAnonIndTest extends BaseTest {
 	 OWLOntologyManager om = create();
 	 OWLOntology onto = null;
 	 String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/testpaintings";
+	 static final String aspect1 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	 static final String aspect2 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
 
 	 @Test
 	 public void testAnonIndExtractionShouldReturnAnonIndsWithAspects() throws OWLOntologyCreationException {
@@ -79,4 +87,97 @@ public class ExtractAnonIndTest extends BaseTest {
 		assertEquals(1, onto.getAnonymousIndividuals().size());	
 	}
 
+	@Test
+	public void testAnonIndExtractionFollowsReferencingAxioms() throws OWLOntologyCreationException {
+		onto = loadAdvisedOntologyWithAspects(om);
+		assertNotNull(onto);
+		
+		OWLNamedIndividual namedInd = df.getOWLNamedIndividual(IRI.create(base + "#SistineMadonnaObj"));
+		OWLObjectProperty objProp = df.getOWLObjectProperty(IRI.create(base + "someInexistentObjProperty"));
+		OWLAnonymousIndividual anonInd1 = df.getOWLAnonymousIndividual("anInd1");
+		OWLAnonymousIndividual anonInd2 = df.getOWLAnonymousIndividual("anInd2");
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		// the first anon. ind. is referenced by axioms with both aspects, the second one only with aspect 2
+		OWLAxiom axiom1 = df.getOWLObjectPropertyAssertionAxiom(objProp, namedInd, anonInd1)
+				.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(isPointcutOf, IRI.create(aspect1))));
+		OWLAxiom axiom2 = df.getOWLObjectPropertyAssertionAxiom(objProp, anonInd1, anonInd2)
+				.getAnnotatedAxiom(new HashSet<OWLAnnotation>(Arrays.asList(df.getOWLAnnotation(isPointcutOf, IRI.create(aspect2)), 
+						df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("restored")))));
+		om.addAxiom(onto, axiom1);
+		om.addAxiom(onto, axiom2);
+		
+		testAnonIndsAspect1(Collections.singleton(anonInd1));
+		testAnonIndsAspect2(new HashSet<OWLAnonymousIndividual>(Arrays.asList(anonInd1, anonInd2)));
+		testAnonIndsAspect1And2(Collections.<OWLAnonymousIndividual>emptySet());
+		testAnonIndsAspect1Or2(new HashSet<OWLAnonymousIndividual>(Arrays.asList(anonInd1, anonInd2)));
+		
+		// removing the only axiom with aspect 2 leaves the anon. ind. referenced with aspect 1
+		om.removeAxiom(onto, axiom2);
+		testAnonIndsAspect2(Collections.<OWLAnonymousIndividual>emptySet());
+		testAnonIndsAspect1Or2(Collections.singleton(anonInd1));
+		
+		om.removeOntology(onto);
+	}
+	
+	@Test
+	public void testUnindexedAnonIndExtractionMatchesIndexed() throws Exception {
+		Function<OWLOntology, Set<OWLAnonymousIndividual>> unindexed = newInstance(
+				configuredClassLoader(Collections.singletonMap("indexAnonymousIndividuals", false)), Aspect1Or2AnonInds.class);
+		Function<OWLOntology, Set<OWLAnonymousIndividual>> indexed = new Aspect1Or2AnonInds();
+		onto = loadAdvisedOntologyWithAspects(om);
+		
+		OWLNamedIndividual namedInd = df.getOWLNamedIndividual(IRI.create(base + "#SistineMadonnaObj"));
+		OWLObjectProperty objProp = df.getOWLObjectProperty(IRI.create(base + "someInexistentObjProperty"));
+		OWLAnonymousIndividual anonInd1 = df.getOWLAnonymousIndividual("anInd1");
+		OWLAnonymousIndividual anonInd2 = df.getOWLAnonymousIndividual("anInd2");
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		// only the first anon. ind. is referenced by an axiom with aspects
+		OWLAxiom axiom1 = df.getOWLObjectPropertyAssertionAxiom(objProp, namedInd, anonInd1)
+				.getAnnotatedAxiom(Collections.singleton(df.getOWLAnnotation(isPointcutOf, IRI.create(aspect2))));
+		om.addAxiom(onto, axiom1);
+		om.addAxiom(onto, df.getOWLObjectPropertyAssertionAxiom(objProp, namedInd, anonInd2));
+		
+		assertEquals(Collections.singleton(anonInd1), indexed.apply(onto));
+		assertEquals(indexed.apply(onto), unindexed.apply(onto));
+		om.removeAxiom(onto, axiom1);
+		assertEquals(Collections.<OWLAnonymousIndividual>emptySet(), unindexed.apply(onto));
+		
+		om.removeOntology(onto);
+	}
+	
+	@OWLAspectAnd({aspect1})
+	private void testAnonIndsAspect1(Set<OWLAnonymousIndividual> expected) {
+		assertEquals(expected, onto.getAnonymousIndividuals());
+	}
+	
+	@OWLAspectAnd({aspect2})
+	private void testAnonIndsAspect2(Set<OWLAnonymousIndividual> expected) {
+		assertEquals(expected, onto.getAnonymousIndividuals());
+	}
+	
+	@OWLAspectAnd({aspect1, aspect2})
+	private void testAnonIndsAspect1And2(Set<OWLAnonymousIndividual> expected) {
+		// no single axiom has both aspects
+		assertEquals(expected, onto.getAnonymousIndividuals());
+	}
+	
+	@OWLAspectAnd({aspect1})
+	@OWLAspectAnd({aspect2})
+	private void testAnonIndsAspect1Or2(Set<OWLAnonymousIndividual> expected) {
+		assertEquals(expected, onto.getAnonymousIndividuals());
+	}
+	
+	/**
+	 * gets the anonymous individuals with aspect 1 or 2, using the options of the class loader it is loaded with
+	 */
+	public static class Aspect1Or2AnonInds implements Function<OWLOntology, Set<OWLAnonymousIndividual>> {
+		
+		@Override
+		@OWLAspectAnd({aspect1})
+		@OWLAspectAnd({aspect2})
+		public Set<OWLAnonymousIndividual> apply(OWLOntology onto) {
+			return onto.getAnonymousIndividuals();
+		}
+	}
+
 }
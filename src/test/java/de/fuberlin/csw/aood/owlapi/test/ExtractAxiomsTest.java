@@ -18,15 +18,28 @@
 package de.fuberlin.csw.aood.owlapi.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.junit.Test;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
@@ -37,6 +50,9 @@ import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
 
 public class ExtractAxiomsTest extends BaseTest {
 
+	 static final String spiegel = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
+	 static final String el = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/complexity/example#OWLELComplexity";
+	 
 	 OWLOntology onto = null;
 	 String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/testpaintings";
  
@@ -85,6 +101,112 @@ public class ExtractAxiomsTest extends BaseTest {
 		assertEquals(2, coll.size());		
 	}
 
-
+	@Test
+	public void testLazyViewMatchesFilteredAxioms() throws Exception {
+		// views are only returned if modules are not expanded
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("expandModules", false);
+		Function<OWLOntology, Set<OWLAxiom>> eager = newInstance(configuredClassLoader(options), SpiegelAxioms.class);
+		options.put("lazyAxiomViews", true);
+		Function<OWLOntology, Set<OWLAxiom>> lazy = newInstance(configuredClassLoader(options), SpiegelAxioms.class);
+		
+		OWLOntologyManager om = create();
+		onto = loadAdvisedOntologyWithAspects(om);
+		// an axiom with current aspects in two variants, returned once
+		OWLAnnotation spiegelAnnotation = df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(spiegel));
+		OWLAxiom axiom = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+				df.getOWLClass(IRI.create(base + "#Painting")));
+		om.addAxiom(onto, axiom.getAnnotatedAxiom(Collections.singleton(spiegelAnnotation)));
+		om.addAxiom(onto, axiom.getAnnotatedAxiom(new HashSet<OWLAnnotation>(Arrays.asList(
+				spiegelAnnotation, df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("variant"))))));
+		OWLAxiom without = df.getOWLSubClassOfAxiom(df.getOWLClass(IRI.create(base + "#Fresco")), 
+				df.getOWLClass(IRI.create(base + "#Artwork")));
+		om.addAxiom(onto, without);
+		
+		Set<OWLAxiom> expected = eager.apply(onto);
+		Set<OWLAxiom> view = lazy.apply(onto);
+		assertEquals("FilteredAxiomSet", view.getClass().getSimpleName());
+		assertTrue(expected.contains(axiom));
+		assertFalse(view.isEmpty());
+		assertTrue(view.contains(axiom));
+		assertFalse(view.contains(without));
+		assertFalse(view.contains(axiom.getAnnotatedAxiom(Collections.singleton(spiegelAnnotation))));
+		List<OWLAxiom> iterated = new ArrayList<OWLAxiom>();
+		for (OWLAxiom ax : view) {
+			iterated.add(ax);
+		}
+		assertEquals(expected.size(), iterated.size());
+		assertEquals(expected, new HashSet<OWLAxiom>(iterated));
+		assertEquals(expected.size(), view.size());
+		assertEquals(expected, view);
+		try {
+			view.add(without);
+			fail("view should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		// the view reads the ontology when it is used
+		om.removeAxiom(onto, axiom.getAnnotatedAxiom(Collections.singleton(spiegelAnnotation)));
+		assertTrue(view.contains(axiom));
+		om.removeAxiom(onto, axiom.getAnnotatedAxiom(new HashSet<OWLAnnotation>(Arrays.asList(
+				spiegelAnnotation, df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("variant"))))));
+		assertFalse(lazy.apply(onto).contains(axiom));
+		om.removeOntology(onto);
+	}
+	
+	@Test
+	public void testParallelFilteringMatchesSequential() throws Exception {
+		// every collection is split, so the smallest tasks filter single elements
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("parallelFilteringThreshold", 2);
+		Function<OWLOntology, List<Set<?>>> parallel = newInstance(configuredClassLoader(options), SpiegelOrELObjects.class);
+		Function<OWLOntology, List<Set<?>>> sequential = new SpiegelOrELObjects();
+		
+		OWLOntologyManager om = create();
+		onto = loadAdvisedOntologyWithAspects(om);
+		OWLAnnotation spiegelAnnotation = df.getOWLAnnotation(df.getOWLAnnotationProperty(isPointcutOfPropertyIRI), IRI.create(spiegel));
+		OWLObjectProperty hasRestorer = df.getOWLObjectProperty(IRI.create(base + "#hasRestorer"));
+		for (int i = 0; i < 3; i++) {
+			om.addAxiom(onto, df.getOWLObjectPropertyAssertionAxiom(hasRestorer, 
+					df.getOWLNamedIndividual(IRI.create(base + "#SistineMadonnaObj")), df.getOWLAnonymousIndividual("restorer" + i))
+					.getAnnotatedAxiom(Collections.singleton(spiegelAnnotation)));
+		}
+		
+		List<Set<?>> expected = sequential.apply(onto);
+		for (Set<?> objects : expected) {
+			assertFalse(objects.isEmpty());
+		}
+		for (int round = 0; round < 5; round++) {
+			assertEquals(expected, parallel.apply(onto));
+		}
+		om.removeOntology(onto);
+	}
+	
+	/**
+	 * gets the axioms with the aspect Spiegel, using the options of the class loader it is loaded with
+	 */
+	public static class SpiegelAxioms implements Function<OWLOntology, Set<OWLAxiom>> {
+		
+		@Override
+		@OWLAspectAnd({spiegel})
+		public Set<OWLAxiom> apply(OWLOntology onto) {
+			return onto.getAxioms();
+		}
+	}
+	
+	/**
+	 * gets the axioms, entities and anonymous individuals with the aspect Spiegel or EL complexity, 
+	 * using the options of the class loader it is loaded with
+	 */
+	public static class SpiegelOrELObjects implements Function<OWLOntology, List<Set<?>>> {
+		
+		@Override
+		@OWLAspectAnd({spiegel})
+		@OWLAspectAnd({el})
+		public List<Set<?>> apply(OWLOntology onto) {
+			return Arrays.<Set<?>>asList(onto.getAxioms(), onto.getSignature(), onto.getAnonymousIndividuals());
+		}
+	}
 	
 }
@@ -20,9 +20,18 @@ package de.fuberlin.csw.aood.owlapi.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
@@ -34,6 +43,8 @@ public class ExtractEntitiesTest extends BaseTest {
 	
 	 OWLOntology onto = null;
 	 String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/testpaintings";
+	 static final String aspect1 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	 static final String aspect2 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
 
 	 @Test
 	 public void testAnonIndExtractionShouldReturnAnonIndsWithAspects() throws OWLOntologyCreationException {
@@ -66,4 +77,95 @@ public class ExtractEntitiesTest extends BaseTest {
 		assertEquals(20, allEntities.size());	
 	}
 
+	@Test
+	public void testEntityExtractionFollowsDeclarations() throws OWLOntologyCreationException {
+		OWLOntologyManager om = create();
+		onto = om.createOntology(IRI.create(base + "/declarations"));
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		OWLAnnotation aspect1Annotation = df.getOWLAnnotation(isPointcutOf, IRI.create(aspect1));
+		OWLAnnotation aspect2Annotation = df.getOWLAnnotation(isPointcutOf, IRI.create(aspect2));
+		OWLClass fresco = df.getOWLClass(IRI.create(base + "#Fresco"));
+		OWLClass mural = df.getOWLClass(IRI.create(base + "#Mural"));
+		OWLClass tempera = df.getOWLClass(IRI.create(base + "#Tempera"));
+		om.addAxiom(onto, df.getOWLDeclarationAxiom(fresco, Collections.singleton(aspect1Annotation)));
+		om.addAxiom(onto, df.getOWLDeclarationAxiom(mural, new HashSet<OWLAnnotation>(Arrays.asList(aspect2Annotation, 
+				df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("on walls"))))));
+		// two declarations with one aspect each
+		om.addAxiom(onto, df.getOWLDeclarationAxiom(tempera, Collections.singleton(aspect1Annotation)));
+		OWLAxiom temperaAspect2 = df.getOWLDeclarationAxiom(tempera, Collections.singleton(aspect2Annotation));
+		om.addAxiom(onto, temperaAspect2);
+		// other axioms do not add entities
+		om.addAxiom(onto, df.getOWLSubClassOfAxiom(fresco, mural, Collections.singleton(aspect1Annotation)));
+		
+		testEntitiesAspect1(new HashSet<OWLClass>(Arrays.asList(fresco, tempera)));
+		testEntitiesAspect2(new HashSet<OWLClass>(Arrays.asList(mural, tempera)));
+		testEntitiesAspect1And2(Collections.<OWLClass>emptySet());
+		testEntitiesAspect1Or2(new HashSet<OWLClass>(Arrays.asList(fresco, mural, tempera)));
+		
+		om.removeAxiom(onto, temperaAspect2);
+		testEntitiesAspect2(Collections.singleton(mural));
+		testEntitiesAspect1Or2(new HashSet<OWLClass>(Arrays.asList(fresco, mural, tempera)));
+		
+		om.removeOntology(onto);
+	}
+	
+	@Test
+	public void testUnindexedEntityExtractionMatchesIndexed() throws Exception {
+		Function<OWLOntology, Set<OWLClass>> unindexed = newInstance(
+				configuredClassLoader(Collections.singletonMap("indexDeclarations", false)), Aspect1Or2Classes.class);
+		Function<OWLOntology, Set<OWLClass>> indexed = new Aspect1Or2Classes();
+		OWLOntologyManager om = create();
+		onto = om.createOntology(IRI.create(base + "/declarations"));
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		OWLAnnotation aspect1Annotation = df.getOWLAnnotation(isPointcutOf, IRI.create(aspect1));
+		OWLClass fresco = df.getOWLClass(IRI.create(base + "#Fresco"));
+		OWLClass mural = df.getOWLClass(IRI.create(base + "#Mural"));
+		OWLAxiom frescoAspect1 = df.getOWLDeclarationAxiom(fresco, Collections.singleton(aspect1Annotation));
+		om.addAxiom(onto, frescoAspect1);
+		om.addAxiom(onto, df.getOWLDeclarationAxiom(mural));
+		om.addAxiom(onto, df.getOWLSubClassOfAxiom(mural, fresco, Collections.singleton(aspect1Annotation)));
+		
+		assertEquals(Collections.singleton(fresco), indexed.apply(onto));
+		assertEquals(indexed.apply(onto), unindexed.apply(onto));
+		om.removeAxiom(onto, frescoAspect1);
+		assertEquals(Collections.<OWLClass>emptySet(), unindexed.apply(onto));
+		
+		om.removeOntology(onto);
+	}
+	
+	@OWLAspectAnd({aspect1})
+	private void testEntitiesAspect1(Set<OWLClass> expected) {
+		assertEquals(expected, onto.getClassesInSignature());
+	}
+	
+	@OWLAspectAnd({aspect2})
+	private void testEntitiesAspect2(Set<OWLClass> expected) {
+		assertEquals(expected, onto.getClassesInSignature());
+	}
+	
+	@OWLAspectAnd({aspect1, aspect2})
+	private void testEntitiesAspect1And2(Set<OWLClass> expected) {
+		// no single declaration has both aspects
+		assertEquals(expected, onto.getClassesInSignature());
+	}
+	
+	@OWLAspectAnd({aspect1})
+	@OWLAspectAnd({aspect2})
+	private void testEntitiesAspect1Or2(Set<OWLClass> expected) {
+		assertEquals(expected, onto.getClassesInSignature());
+	}
+	
+	/**
+	 * gets the classes with aspect 1 or 2, using the options of the class loader it is loaded with
+	 */
+	public static class Aspect1Or2Classes implements Function<OWLOntology, Set<OWLClass>> {
+		
+		@Override
+		@OWLAspectAnd({aspect1})
+		@OWLAspectAnd({aspect2})
+		public Set<OWLClass> apply(OWLOntology onto) {
+			return onto.getClassesInSignature();
+		}
+	}
+
 }
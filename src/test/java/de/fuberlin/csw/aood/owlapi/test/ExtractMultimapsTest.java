@@ -20,19 +20,32 @@ package de.fuberlin.csw.aood.owlapi.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 import org.junit.Test;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataProperty;
 import org.semanticweb.owlapi.model.OWLDataPropertyExpression;
 import org.semanticweb.owlapi.model.OWLIndividual;
 import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
 
 import de.fuberlin.csw.aood.owlapi.OWLAspectAnd;
@@ -41,6 +54,8 @@ public class ExtractMultimapsTest extends BaseTest {
 	
 	 OWLOntology onto = null;
 	 String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/testpaintings";
+	 static final String aspect1 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Wikipedia";
+	 static final String aspect2 = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/provenance/example#Spiegel";
 
 	 @Test
 	 public void testAnonIndExtractionShouldReturnAnonIndsWithAspects() throws OWLOntologyCreationException {
@@ -83,4 +98,128 @@ public class ExtractMultimapsTest extends BaseTest {
 		assertEquals(3, multimap.size());	
 	}
 
+	@Test
+	public void testMultimapExtractionFollowsAssertions() throws OWLOntologyCreationException {
+		OWLOntologyManager om = create();
+		onto = om.createOntology(IRI.create(base + "/assertions"));
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		Set<OWLAnnotation> aspect1Annotations = Collections.singleton(df.getOWLAnnotation(isPointcutOf, IRI.create(aspect1)));
+		Set<OWLAnnotation> aspect2Annotations = new HashSet<OWLAnnotation>(Arrays.asList(
+				df.getOWLAnnotation(isPointcutOf, IRI.create(aspect2)), 
+				df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("restored"))));
+		OWLIndividual ind = df.getOWLNamedIndividual(IRI.create(base + "#Fresco"));
+		OWLIndividual painter = df.getOWLNamedIndividual(IRI.create(base + "#Painter"));
+		OWLIndividual restorer = df.getOWLNamedIndividual(IRI.create(base + "#Restorer"));
+		OWLObjectProperty hasCreator = df.getOWLObjectProperty(IRI.create(base + "#hasCreator"));
+		OWLDataProperty year = df.getOWLDataProperty(IRI.create(base + "#year"));
+		OWLLiteral created = df.getOWLLiteral(1508);
+		OWLLiteral restored = df.getOWLLiteral(1994);
+		om.addAxiom(onto, df.getOWLObjectPropertyAssertionAxiom(hasCreator, ind, painter, aspect1Annotations));
+		OWLAxiom restorerAxiom = df.getOWLObjectPropertyAssertionAxiom(hasCreator, ind, restorer, aspect2Annotations);
+		om.addAxiom(onto, restorerAxiom);
+		om.addAxiom(onto, df.getOWLNegativeObjectPropertyAssertionAxiom(hasCreator, ind, restorer, aspect1Annotations));
+		om.addAxiom(onto, df.getOWLDataPropertyAssertionAxiom(year, ind, created, aspect1Annotations));
+		om.addAxiom(onto, df.getOWLNegativeDataPropertyAssertionAxiom(year, ind, restored, aspect2Annotations));
+		
+		Multimap<OWLObject, OWLObject> none = ImmutableSetMultimap.of();
+		testMultimapsAspect1(ind, ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, painter), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, restorer), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(year, created), none);
+		testMultimapsAspect2(ind, ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, restorer), none, 
+				none, ImmutableSetMultimap.<OWLObject, OWLObject>of(year, restored));
+		testMultimapsAspect1Or2(ind, ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, painter, hasCreator, restorer), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, restorer), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(year, created), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(year, restored));
+		
+		om.removeAxiom(onto, restorerAxiom);
+		testMultimapsAspect2(ind, none, none, none, ImmutableSetMultimap.<OWLObject, OWLObject>of(year, restored));
+		testMultimapsAspect1Or2(ind, ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, painter), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, restorer), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(year, created), 
+				ImmutableSetMultimap.<OWLObject, OWLObject>of(year, restored));
+		
+		om.removeOntology(onto);
+	}
+	
+	@Test
+	public void testUnindexedMultimapExtractionMatchesIndexed() throws Exception {
+		BiFunction<OWLIndividual, OWLOntology, List<Multimap<OWLObject, OWLObject>>> unindexed = newInstance(
+				configuredClassLoader(Collections.singletonMap("indexPropertyAssertions", false)), Aspect1Or2PropertyValues.class);
+		BiFunction<OWLIndividual, OWLOntology, List<Multimap<OWLObject, OWLObject>>> indexed = new Aspect1Or2PropertyValues();
+		OWLOntologyManager om = create();
+		onto = om.createOntology(IRI.create(base + "/assertions"));
+		OWLAnnotationProperty isPointcutOf = df.getOWLAnnotationProperty(isPointcutOfPropertyIRI);
+		Set<OWLAnnotation> aspect1Annotations = Collections.singleton(df.getOWLAnnotation(isPointcutOf, IRI.create(aspect1)));
+		OWLIndividual ind = df.getOWLNamedIndividual(IRI.create(base + "#Fresco"));
+		OWLIndividual painter = df.getOWLNamedIndividual(IRI.create(base + "#Painter"));
+		OWLIndividual restorer = df.getOWLNamedIndividual(IRI.create(base + "#Restorer"));
+		OWLObjectProperty hasCreator = df.getOWLObjectProperty(IRI.create(base + "#hasCreator"));
+		OWLDataProperty year = df.getOWLDataProperty(IRI.create(base + "#year"));
+		OWLAxiom painterAxiom = df.getOWLObjectPropertyAssertionAxiom(hasCreator, ind, painter, aspect1Annotations);
+		om.addAxiom(onto, painterAxiom);
+		om.addAxiom(onto, df.getOWLObjectPropertyAssertionAxiom(hasCreator, ind, restorer));
+		om.addAxiom(onto, df.getOWLNegativeObjectPropertyAssertionAxiom(hasCreator, ind, restorer, aspect1Annotations));
+		om.addAxiom(onto, df.getOWLDataPropertyAssertionAxiom(year, ind, df.getOWLLiteral(1508), aspect1Annotations));
+		om.addAxiom(onto, df.getOWLNegativeDataPropertyAssertionAxiom(year, ind, df.getOWLLiteral(1994)));
+		
+		List<Multimap<OWLObject, OWLObject>> expected = indexed.apply(ind, onto);
+		assertEquals(ImmutableSetMultimap.<OWLObject, OWLObject>of(hasCreator, painter), expected.get(0));
+		assertEquals(expected, unindexed.apply(ind, onto));
+		om.removeAxiom(onto, painterAxiom);
+		assertEquals(indexed.apply(ind, onto), unindexed.apply(ind, onto));
+		
+		om.removeOntology(onto);
+	}
+	
+	@OWLAspectAnd({aspect1})
+	private void testMultimapsAspect1(OWLIndividual ind, Multimap<OWLObject, OWLObject> objValues, 
+			Multimap<OWLObject, OWLObject> negObjValues, Multimap<OWLObject, OWLObject> dataValues, 
+			Multimap<OWLObject, OWLObject> negDataValues) {
+		assertEquals(objValues, HashMultimap.create(EntitySearcher.getObjectPropertyValues(ind, onto)));
+		assertEquals(negObjValues, HashMultimap.create(EntitySearcher.getNegativeObjectPropertyValues(ind, onto)));
+		assertEquals(dataValues, HashMultimap.create(EntitySearcher.getDataPropertyValues(ind, onto)));
+		assertEquals(negDataValues, HashMultimap.create(EntitySearcher.getNegativeDataPropertyValues(ind, onto)));
+	}
+	
+	@OWLAspectAnd({aspect2})
+	private void testMultimapsAspect2(OWLIndividual ind, Multimap<OWLObject, OWLObject> objValues, 
+			Multimap<OWLObject, OWLObject> negObjValues, Multimap<OWLObject, OWLObject> dataValues, 
+			Multimap<OWLObject, OWLObject> negDataValues) {
+		assertEquals(objValues, HashMultimap.create(EntitySearcher.getObjectPropertyValues(ind, onto)));
+		assertEquals(negObjValues, HashMultimap.create(EntitySearcher.getNegativeObjectPropertyValues(ind, onto)));
+		assertEquals(dataValues, HashMultimap.create(EntitySearcher.getDataPropertyValues(ind, onto)));
+		assertEquals(negDataValues, HashMultimap.create(EntitySearcher.getNegativeDataPropertyValues(ind, onto)));
+	}
+	
+	@OWLAspectAnd({aspect1})
+	@OWLAspectAnd({aspect2})
+	private void testMultimapsAspect1Or2(OWLIndividual ind, Multimap<OWLObject, OWLObject> objValues, 
+			Multimap<OWLObject, OWLObject> negObjValues, Multimap<OWLObject, OWLObject> dataValues, 
+			Multimap<OWLObject, OWLObject> negDataValues) {
+		assertEquals(objValues, HashMultimap.create(EntitySearcher.getObjectPropertyValues(ind, onto)));
+		assertEquals(negObjValues, HashMultimap.create(EntitySearcher.getNegativeObjectPropertyValues(ind, onto)));
+		assertEquals(dataValues, HashMultimap.create(EntitySearcher.getDataPropertyValues(ind, onto)));
+		assertEquals(negDataValues, HashMultimap.create(EntitySearcher.getNegativeDataPropertyValues(ind, onto)));
+	}
+	
+	/**
+	 * gets the object, negative object, data and negative data property values of an individual 
+	 * with aspect 1 or 2, using the options of the class loader it is loaded with
+	 */
+	public static class Aspect1Or2PropertyValues 
+			implements BiFunction<OWLIndividual, OWLOntology, List<Multimap<OWLObject, OWLObject>>> {
+		
+		@Override
+		@OWLAspectAnd({aspect1})
+		@OWLAspectAnd({aspect2})
+		public List<Multimap<OWLObject, OWLObject>> apply(OWLIndividual ind, OWLOntology onto) {
+			return Arrays.<Multimap<OWLObject, OWLObject>>asList(
+					HashMultimap.<OWLObject, OWLObject>create(EntitySearcher.getObjectPropertyValues(ind, onto)), 
+					HashMultimap.<OWLObject, OWLObject>create(EntitySearcher.getNegativeObjectPropertyValues(ind, onto)), 
+					HashMultimap.<OWLObject, OWLObject>create(EntitySearcher.getDataPropertyValues(ind, onto)), 
+					HashMultimap.<OWLObject, OWLObject>create(EntitySearcher.getNegativeDataPropertyValues(ind, onto)));
+		}
+	}
+
 }
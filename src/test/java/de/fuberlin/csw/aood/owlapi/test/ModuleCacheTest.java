@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of the Corporate Smart Content Project at Freie Universitaet Berlin, Corporate Semantic Web Group.
+ * 
+ * This work has been partially supported by the "InnoProfile-Corporate Semantic Web" project funded by the German Federal Ministry of Education and Research (BMBF) and the BMBF Innovation Initiative for the New German Laender - Entrepreneurial Regions.
+ * 
+ * http://www.corporate-smart-content.de/
+ * 
+ * Freie Universitaet Berlin
+ * Copyright (c) 2013-2016
+ * 
+ * Institut fuer Informatik
+ * Working Group Corporate Semantic Web
+ * Koenigin-Luise-Strasse 24-26
+ * 14195 Berlin
+ * 
+ * http://www.mi.fu-berlin.de/en/inf/groups/ag-csw/
+ ******************************************************************************/
+package de.fuberlin.csw.aood.owlapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveImport;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import de.fuberlin.csw.aood.owlapi.index.ModuleCache;
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+public class ModuleCacheTest extends BaseTest {
+	
+	static final String base = "http://www.corporate-semantic-web.de/ontologies/aspect/owl/example/modules";
+	
+	OWLOntologyManager om = create();
+	
+	@Test
+	public void testRevisionIsNotReusedAfterRemovingImport() throws Exception {
+		OWLOntology importing = om.createOntology(IRI.create(base));
+		OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+		OWLImportsDeclaration declaration = df.getOWLImportsDeclaration(IRI.create(base + "/imported"));
+		om.applyChange(new AddImport(importing, declaration));
+		
+		Set<Long> revisions = new HashSet<Long>();
+		long revision = ModuleCache.getRevision(importing);
+		assertEquals(revision, ModuleCache.getRevision(importing));
+		revisions.add(revision);
+		
+		om.addAxiom(imported, df.getOWLSubClassOfAxiom(cls("Painting"), cls("Artwork")));
+		assertTrue(revisions.add(ModuleCache.getRevision(importing)));
+		// the importing ontology changes, but its closure loses the changes of the imported ontology
+		om.applyChange(new RemoveImport(importing, declaration));
+		assertTrue(revisions.add(ModuleCache.getRevision(importing)));
+		om.applyChange(new AddImport(importing, declaration));
+		assertTrue(revisions.add(ModuleCache.getRevision(importing)));
+	}
+	
+	@Test
+	public void testCachedModuleIsNotReturnedAfterRemovingImport() throws Exception {
+		OWLOntology importing = om.createOntology(IRI.create(base));
+		OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+		OWLImportsDeclaration declaration = df.getOWLImportsDeclaration(IRI.create(base + "/imported"));
+		om.applyChange(new AddImport(importing, declaration));
+		Set<OWLEntity> signature = Collections.<OWLEntity>singleton(cls("Painting"));
+		ModuleCache.getRevision(importing);
+		
+		om.addAxiom(imported, df.getOWLDeclarationAxiom(cls("Artwork")));
+		om.addAxiom(imported, df.getOWLDeclarationAxiom(cls("Thing")));
+		assertTrue(ModuleCache.getModule(importing, ModuleType.BOT, signature).isEmpty());
+		
+		// as many changes of the importing ontology as the imported ontology had
+		om.applyChange(new RemoveImport(importing, declaration));
+		OWLAxiom axiom = df.getOWLSubClassOfAxiom(cls("Painting"), cls("Artwork"));
+		om.addAxiom(importing, axiom);
+		assertEquals(Collections.singleton(axiom), ModuleCache.getModule(importing, ModuleType.BOT, signature));
+	}
+	
+	@Test
+	public void testIncrementalModulesMatchExtraction() throws Exception {
+		// modules are not maintained incrementally by default
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("maintainModulesIncrementally", true);
+		options.put("moduleCacheSize", 10);
+		Method getModule = configuredClassLoader(options).loadClass(ModuleCache.class.getName())
+				.getMethod("getModule", OWLOntology.class, ModuleType.class, Set.class);
+		for (ModuleType moduleType : ModuleType.values()) {
+			OWLOntologyManager manager = create();
+			OWLOntology onto = manager.loadOntologyFromOntologyDocument(ADVISED_ONTO_WITHASPECTS_FILE);
+			List<OWLEntity> entities = new ArrayList<OWLEntity>(onto.getSignature(Imports.INCLUDED));
+			Collections.sort(entities);
+			Random random = new Random(moduleType.ordinal());
+			List<Set<OWLEntity>> signatures = new ArrayList<Set<OWLEntity>>();
+			List<OWLAxiom> removed = new ArrayList<OWLAxiom>();
+			for (int round = 0; round < 50; round++) {
+				Set<OWLEntity> signature = new HashSet<OWLEntity>();
+				signature.add(entities.get(random.nextInt(entities.size())));
+				signature.add(entities.get(random.nextInt(entities.size())));
+				signatures.add(signature);
+				if (signatures.size() > 3) {
+					signatures.remove(0);
+				}
+				for (Set<OWLEntity> sig : signatures) {
+					getModule.invoke(null, onto, moduleType, sig);
+				}
+				
+				// changes which keep or change the signature of axioms, selected by locality or not
+				List<OWLAxiom> axioms = new ArrayList<OWLAxiom>(onto.getAxioms());
+				Collections.sort(axioms);
+				OWLAxiom axiom = axioms.get(random.nextInt(axioms.size()));
+				OWLEntity entity = entities.get(random.nextInt(entities.size()));
+				OWLClass known = entity.isOWLClass() ? entity.asOWLClass() : cls("C" + random.nextInt(10));
+				OWLClass fresh = cls("C" + random.nextInt(10));
+				OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("round " + round));
+				switch (random.nextInt(8)) {
+				case 0:
+					manager.removeAxiom(onto, axiom);
+					removed.add(axiom);
+					break;
+				case 1:
+					if (!removed.isEmpty()) {
+						manager.addAxiom(onto, removed.remove(random.nextInt(removed.size())));
+					}
+					break;
+				case 2:
+					manager.removeAxiom(onto, axiom);
+					manager.addAxiom(onto, axiom.getAnnotatedAxiom(Collections.singleton(comment)));
+					break;
+				case 3:
+					manager.addAxiom(onto, df.getOWLSubClassOfAxiom(fresh, known));
+					break;
+				case 4:
+					manager.addAxiom(onto, df.getOWLSubClassOfAxiom(known, fresh));
+					break;
+				case 5:
+					manager.addAxiom(onto, df.getOWLDeclarationAxiom(random.nextBoolean() ? entity : fresh));
+					break;
+				case 6:
+					manager.addAxiom(onto, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), entity.getIRI(), 
+							df.getOWLLiteral("round " + round)));
+					break;
+				default:
+					manager.addAxiom(onto, df.getOWLSubClassOfAxiom(df.getOWLThing(), known));
+					break;
+				}
+				
+				for (Set<OWLEntity> sig : signatures) {
+					OWLOntologyManager extractionManager = create();
+					Set<OWLAxiom> extracted = new SyntacticLocalityModuleExtractor(extractionManager, onto, moduleType).extract(sig);
+					assertEquals(moduleType + " module of " + sig + " in round " + round, 
+							extracted, getModule.invoke(null, onto, moduleType, sig));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testPrecomputedExtractorIsRebuiltAfterChanges() throws Exception {
+		// the module cache with precomputed extractors and without caching
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("precomputeModuleExtractors", true);
+		options.put("moduleCacheSize", 0);
+		Class<?> moduleCache = configuredClassLoader(options).loadClass(ModuleCache.class.getName());
+		Method getModule = moduleCache.getMethod("getModule", OWLOntology.class, ModuleType.class, Set.class);
+		Field extractorsField = moduleCache.getDeclaredField("extractors");
+		extractorsField.setAccessible(true);
+		Map<?, ?> extractors = (Map<?, ?>) extractorsField.get(null);
+		
+		OWLOntology importing = om.createOntology(IRI.create(base));
+		OWLOntology imported = om.createOntology(IRI.create(base + "/imported"));
+		om.applyChange(new AddImport(importing, df.getOWLImportsDeclaration(IRI.create(base + "/imported"))));
+		om.addAxiom(importing, df.getOWLSubClassOfAxiom(cls("Painting"), cls("Artwork")));
+		Set<OWLEntity> painting = Collections.<OWLEntity>singleton(cls("Painting"));
+		Set<OWLEntity> artwork = Collections.<OWLEntity>singleton(cls("Artwork"));
+		
+		assertModule(importing, ModuleType.BOT, painting, getModule);
+		Object extractor = extractors.get(importing);
+		assertNotNull(extractor);
+		// extractor of the same revision is reused for other signatures
+		assertModule(importing, ModuleType.BOT, artwork, getModule);
+		assertSame(extractor, extractors.get(importing));
+		
+		// changes of the ontology and of its imports are seen by the next extraction
+		om.addAxiom(imported, df.getOWLSubClassOfAxiom(cls("Artwork"), cls("Thing")));
+		assertModule(importing, ModuleType.BOT, painting, getModule);
+		assertNotSame(extractor, extractors.get(importing));
+		extractor = extractors.get(importing);
+		om.removeAxiom(importing, df.getOWLSubClassOfAxiom(cls("Painting"), cls("Artwork")));
+		assertModule(importing, ModuleType.BOT, painting, getModule);
+		assertModule(importing, ModuleType.BOT, artwork, getModule);
+		assertNotSame(extractor, extractors.get(importing));
+		
+		// an extractor of another module type is not reused
+		for (ModuleType moduleType : ModuleType.values()) {
+			assertModule(importing, moduleType, artwork, getModule);
+		}
+	}
+	
+	private void assertModule(OWLOntology onto, ModuleType moduleType, Set<OWLEntity> signature, Method getModule) throws Exception {
+		Set<OWLAxiom> extracted = new SyntacticLocalityModuleExtractor(create(), onto, moduleType).extract(signature);
+		assertEquals(moduleType + " module of " + signature, extracted, getModule.invoke(null, onto, moduleType, signature));
+	}
+	
+	private OWLClass cls(String name) {
+		return df.getOWLClass(IRI.create(base + "#" + name));
+	}
+
+}